@@ -0,0 +1,54 @@
+package com.booklibrary.booklibrary.benchmarks;
+
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.tools.DatasetGenerator;
+import com.booklibrary.booklibrary.tools.DatasetGenerator.Scale;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * Opens the database the benchmarks run against, generating it on first use. Datasets are kept under
+ * {@code target/benchmark-data}, one file per size, and reused by later runs. The rows come from
+ * {@link DatasetGenerator} with its default seed, so every run measures the same skewed data.
+ */
+final class BenchmarkDatabase {
+    private static final Path DATA_DIRECTORY = Path.of("target", "benchmark-data");
+
+    private BenchmarkDatabase() {
+    }
+
+    static Database open(int books) throws IOException, SQLException {
+        Files.createDirectories(DATA_DIRECTORY);
+        var file = DATA_DIRECTORY.resolve("dataset-" + books + ".db");
+        var complete = DATA_DIRECTORY.resolve("dataset-" + books + ".complete");
+
+        // A generation that was interrupted leaves no marker and is started over
+        if (!Files.exists(complete)) {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(Path.of(file + "-wal"));
+            Files.deleteIfExists(Path.of(file + "-shm"));
+        }
+
+        Database.configure(file.toString());
+        var db = Database.getInstance();
+
+        if (!Files.exists(complete)) {
+            generate(books);
+            Files.createFile(complete);
+        }
+
+        return db;
+    }
+
+    // The number of authors scales with the number of books, as in the generated dataset
+    static int authors(int books) {
+        return Scale.ofBooks(books).authors();
+    }
+
+    private static void generate(int books) throws SQLException {
+        new DatasetGenerator(Scale.ofBooks(books), DatasetGenerator.DEFAULT_SEED, null).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.booklibrary.booklibrary.benchmarks;
+
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.datatypes.Book;
+import com.booklibrary.booklibrary.datatypes.BookRatingStats;
+import com.booklibrary.booklibrary.datatypes.BookReview;
+import com.booklibrary.booklibrary.datatypes.ReservationRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The data access calls behind the main window and the book dialog, run against generated databases of
+ * each size. Every call picks a random row, so results reflect the whole table rather than a warm corner.
+ * Lookups go straight to the database: the entity caches are bypassed, they would turn most calls into
+ * map hits after warmup.
+ * <p>
+ * Each size runs in its own fork because the database is opened once per JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmarks {
+    private static final int PAGE_SIZE = 50;
+    // Enough positions that the pages they start don't all stay in the page cache's hot set
+    private static final int CURSORS = 4096;
+
+    @Param({"10000", "100000", "1000000"})
+    public int books;
+
+    private Database db;
+    private int authors;
+    // Starting points of title-ordered pages, so bookListingsPage times the keyset query alone
+    private Book.Cursor[] titleCursors;
+
+    @Setup(Level.Trial)
+    public void openDatabase() throws Exception {
+        db = BenchmarkDatabase.open(books);
+        authors = BenchmarkDatabase.authors(books);
+
+        titleCursors = new Book.Cursor[CURSORS];
+        for (int i = 0; i < CURSORS; i++) {
+            titleCursors[i] = Book.getCursorAt(Book.SortKey.TITLE, true, randomBook() - 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() {
+        DatabaseExecutor.shutdown();
+        db.closeConnection();
+    }
+
+    @Benchmark
+    public List<Book> getBooks() {
+        return Book.getBooks();
+    }
+
+    @Benchmark
+    public Book findById() {
+        return Book.findById(randomBook());
+    }
+
+    @Benchmark
+    public List<Book> bookListingsPage() {
+        var cursor = titleCursors[ThreadLocalRandom.current().nextInt(CURSORS)];
+        return Book.getBookListingsPage(Book.SortKey.TITLE, true, cursor, PAGE_SIZE);
+    }
+
+    // The OFFSET scan the book table falls back on when it jumps to a page whose predecessor isn't loaded
+    @Benchmark
+    public Book.Cursor bookCursorAt() {
+        return Book.getCursorAt(Book.SortKey.TITLE, true, randomBook() - 1);
+    }
+
+    // What Author.getAverageRating computes, without Author.getById, which is served from the cache
+    @Benchmark
+    public double authorAverageRating() {
+        return BookRatingStats.forAuthor(1 + ThreadLocalRandom.current().nextInt(authors)).getAverage();
+    }
+
+    @Benchmark
+    public List<BookReview> reviewsForBook() {
+        return BookReview.getReviewsForBook(Book.findById(randomBook()));
+    }
+
+    @Benchmark
+    public List<BookReview> reviewsPage() {
+        return BookReview.getPageForBook(randomBook(), null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<ReservationRecord> reservationsByBook() {
+        return ReservationRecord.getByBook(randomBook());
+    }
+
+    @Benchmark
+    public List<ReservationRecord> reservationHistoryPage() {
+        return ReservationRecord.getHistoryPage(randomBook(), null, PAGE_SIZE);
+    }
+
+    private int randomBook() {
+        return 1 + ThreadLocalRandom.current().nextInt(books);
+    }
+}
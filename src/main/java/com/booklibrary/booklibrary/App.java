@@ -1,6 +1,8 @@
 package com.booklibrary.booklibrary;
 
 import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.utils.FxWatchdog;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -11,6 +13,8 @@ import java.io.IOException;
 public class App extends Application {
     @Override
     public void start(Stage stage) throws IOException {
+        FxWatchdog.install();
+
         FXMLLoader fxmlLoader = new FXMLLoader(App.class.getResource("main-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load());
         stage.setTitle("Hello!");
@@ -21,6 +25,8 @@ public class App extends Application {
     @Override
     public void stop() throws Exception {
         super.stop();
+        FxWatchdog.uninstall();
+        DatabaseExecutor.shutdown();
         Database.getInstance().closeConnection();
     }
 
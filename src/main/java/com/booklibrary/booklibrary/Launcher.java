@@ -0,0 +1,227 @@
+package com.booklibrary.booklibrary;
+
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.datatypes.BookRatingStats;
+import com.booklibrary.booklibrary.exporter.CatalogExporter;
+import com.booklibrary.booklibrary.importer.CatalogImporter;
+import com.booklibrary.booklibrary.server.LibraryServer;
+import com.booklibrary.booklibrary.tools.DatasetGenerator;
+import com.booklibrary.booklibrary.tools.LoadDriver;
+import javafx.application.Application;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Entry point of the application. Maintenance commands run without starting JavaFX, which needs a display;
+ * without a command the UI is launched. This class must not extend Application, otherwise the JavaFX
+ * launcher starts the toolkit before main is called.
+ */
+public class Launcher {
+    public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--rebuild-rating-stats")) {
+            rebuildRatingStats();
+            return;
+        }
+
+        // --import <authors|members|books> <file>
+        var importAt = Arrays.asList(args).indexOf("--import");
+        if (importAt >= 0) {
+            if (importAt + 2 >= args.length) {
+                System.err.println("Usage: --import <authors|members|books> <file>");
+                return;
+            }
+
+            CatalogImporter.Kind kind;
+            try {
+                kind = CatalogImporter.Kind.parse(args[importAt + 1]);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown import kind: " + args[importAt + 1]);
+                return;
+            }
+
+            importFile(kind, Path.of(args[importAt + 2]));
+            return;
+        }
+
+        // --export <books|reviews|reservations> <file>
+        var exportAt = Arrays.asList(args).indexOf("--export");
+        if (exportAt >= 0) {
+            if (exportAt + 2 >= args.length) {
+                System.err.println("Usage: --export <books|reviews|reservations> <file.csv|file.jsonl>[.gz]");
+                return;
+            }
+
+            CatalogExporter.Kind kind;
+            try {
+                kind = CatalogExporter.Kind.parse(args[exportAt + 1]);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown export kind: " + args[exportAt + 1]);
+                return;
+            }
+
+            exportFile(kind, Path.of(args[exportAt + 2]));
+            return;
+        }
+
+        // --generate-dataset <books> [seed]
+        var generateAt = Arrays.asList(args).indexOf("--generate-dataset");
+        if (generateAt >= 0) {
+            try {
+                var books = Integer.parseInt(args[generateAt + 1]);
+                var seed = generateAt + 2 < args.length ? Long.parseLong(args[generateAt + 2]) : DatasetGenerator.DEFAULT_SEED;
+                generateDataset(books, seed);
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                System.err.println("Usage: --generate-dataset <books> [seed]");
+            }
+            return;
+        }
+
+        // --load-test <seconds> [threads]
+        var loadTestAt = Arrays.asList(args).indexOf("--load-test");
+        if (loadTestAt >= 0) {
+            try {
+                var seconds = Integer.parseInt(args[loadTestAt + 1]);
+                var threads = loadTestAt + 2 < args.length ? Integer.parseInt(args[loadTestAt + 2]) : 4;
+                loadTest(Duration.ofSeconds(seconds), threads);
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                System.err.println("Usage: --load-test <seconds> [threads]");
+            }
+            return;
+        }
+
+        // --serve [port]
+        var serveAt = Arrays.asList(args).indexOf("--serve");
+        if (serveAt >= 0) {
+            try {
+                serve(serveAt + 1 < args.length ? Integer.parseInt(args[serveAt + 1]) : 8080);
+            } catch (NumberFormatException e) {
+                System.err.println("Usage: --serve [port]");
+            }
+            return;
+        }
+
+        Application.launch(App.class, args);
+    }
+
+    // Recomputes the materialized rating statistics
+    private static void rebuildRatingStats() {
+        try {
+            var start = System.nanoTime();
+            var books = BookRatingStats.rebuild();
+            var millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("Rebuilt rating statistics for " + books + " books in " + millis + " ms");
+        } catch (SQLException e) {
+            System.err.println("Error rebuilding rating statistics: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            DatabaseExecutor.shutdown();
+            Database.getInstance().closeConnection();
+        }
+    }
+
+    private static void importFile(CatalogImporter.Kind kind, Path file) {
+        var importer = new CatalogImporter(kind, progress -> System.out.printf(
+                "\r%,d rows read, %,d imported, %,d skipped, %,d failed (%.0f%%, %,.0f rows/s)",
+                progress.rowsRead(), progress.imported(), progress.skipped(), progress.failed(),
+                progress.fraction() * 100, progress.rowsPerSecond()));
+
+        try {
+            var result = importer.run(file);
+            System.out.printf("%nFinished in %.1f s, %,d new authors created%n", result.progress().elapsedNanos() / 1e9, result.authorsCreated());
+
+            for (var error : result.errors()) {
+                System.err.println("Line " + error.line() + ": " + error.message());
+            }
+            if (!result.isComplete()) {
+                System.err.println("Stopped early, the rest of the file could not be read: " + result.abortReason());
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("Error importing " + file + ": " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            DatabaseExecutor.shutdown();
+            Database.getInstance().closeConnection();
+        }
+    }
+
+    private static void exportFile(CatalogExporter.Kind kind, Path file) {
+        try {
+            var result = CatalogExporter.forFile(kind, file).run(file);
+            System.out.printf("Exported %,d rows (%,d bytes) to %s in %.1f s%n", result.rows(), result.bytes(), file, result.elapsedNanos() / 1e9);
+        } catch (IllegalArgumentException | IOException | SQLException e) {
+            System.err.println("Error exporting " + file + ": " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            DatabaseExecutor.shutdown();
+            Database.getInstance().closeConnection();
+        }
+    }
+
+    private static void generateDataset(int books, long seed) {
+        var generator = new DatasetGenerator(DatasetGenerator.Scale.ofBooks(books), seed, progress -> System.out.printf(
+                "\r%-20s %,d / %,d", progress.table(), progress.rows(), progress.total()));
+
+        try {
+            var result = generator.run();
+            System.out.printf("%nGenerated %,d authors, %,d members, %,d books, %,d reviews and %,d reservations (%,d open) in %.1f s%n",
+                    result.authors(), result.members(), result.books(), result.reviews(), result.reservations(),
+                    result.openReservations(), result.elapsedNanos() / 1e9);
+        } catch (SQLException e) {
+            System.err.println("Error generating the dataset: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            DatabaseExecutor.shutdown();
+            Database.getInstance().closeConnection();
+        }
+    }
+
+    private static void loadTest(Duration duration, int threads) {
+        try {
+            var stats = new LoadDriver(threads, duration, DatasetGenerator.DEFAULT_SEED).run();
+            System.out.printf("%-18s %10s %8s %10s %9s %9s %9s %9s%n", "operation", "count", "errors", "ops/s", "p50 us", "p95 us", "p99 us", "max us");
+            for (var stat : stats) {
+                System.out.printf("%-18s %,10d %,8d %,10.1f %,9d %,9d %,9d %,9d%n", stat.operation(), stat.count(), stat.errors(),
+                        stat.perSecond(), stat.p50Micros(), stat.p95Micros(), stat.p99Micros(), stat.maxMicros());
+            }
+        } catch (SQLException e) {
+            System.err.println("Error running the load test: " + e.getMessage());
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            DatabaseExecutor.shutdown();
+            Database.getInstance().closeConnection();
+        }
+    }
+
+    // Runs until the process is stopped, the server's threads keep it alive after main returns.
+    // Only reachable from this machine unless booklibrary.server.host names a wider address, e.g. 0.0.0.0
+    private static void serve(int port) {
+        var host = System.getProperty("booklibrary.server.host", "127.0.0.1");
+        // Twice the readers, so requests are being parsed and written while others hold a connection
+        var threads = 2 * Database.getInstance().getMaxReaders();
+
+        try {
+            var server = new LibraryServer(new InetSocketAddress(host, port), threads);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                DatabaseExecutor.shutdown();
+                Database.getInstance().closeConnection();
+            }));
+
+            server.start();
+            System.out.println("Serving the library on http://" + host + ":" + server.getAddress().getPort() + " with " + threads + " threads");
+        } catch (IOException e) {
+            System.err.println("Error starting the server: " + e.getMessage());
+            e.printStackTrace();
+            DatabaseExecutor.shutdown();
+            Database.getInstance().closeConnection();
+        }
+    }
+}
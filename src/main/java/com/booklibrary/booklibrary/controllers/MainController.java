@@ -1,23 +1,42 @@
 package com.booklibrary.booklibrary.controllers;
 
+import com.booklibrary.booklibrary.database.ChangeLog;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
 import com.booklibrary.booklibrary.datatypes.Author;
 import com.booklibrary.booklibrary.datatypes.Book;
 import com.booklibrary.booklibrary.datatypes.Member;
 import com.booklibrary.booklibrary.dialogs.BookManagementDialog;
 import com.booklibrary.booklibrary.dialogs.CreateBookDialog;
 import com.booklibrary.booklibrary.dialogs.CreateMemberDialog;
-import javafx.beans.property.SimpleIntegerProperty;
+import com.booklibrary.booklibrary.dialogs.ImportDialog;
+import com.booklibrary.booklibrary.exporter.CatalogExporter;
+import com.booklibrary.booklibrary.importer.CatalogImporter;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
-import java.util.Objects;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
+import static com.booklibrary.booklibrary.utils.Utils.onFxThread;
 import static com.booklibrary.booklibrary.utils.Utils.showError;
 import static com.booklibrary.booklibrary.utils.Utils.showSuccess;
 
@@ -28,6 +47,8 @@ public class MainController {
     @FXML public TableView<Author> authorTableView;
     @FXML public TableView<Member> memberTableView;
 
+    @FXML private TextField bookSearchField;
+
     // Book table columns
     @FXML private TableColumn<Book, Number> bookIdColumn;
     @FXML private TableColumn<Book, String> bookTitleColumn;
@@ -60,38 +81,52 @@ public class MainController {
     @FXML private Button deleteMemberButton;
 
     // Lists
-    private final ObservableList<Book> books = FXCollections.observableArrayList();
+    private final PagedBookList books = new PagedBookList();
+    private final ObservableList<Book> searchResults = FXCollections.observableArrayList();
     private final ObservableList<Author> authors = FXCollections.observableArrayList();
     private final ObservableList<Member> members = FXCollections.observableArrayList();
 
+    private static final int SEARCH_RESULT_LIMIT = 200;
+    private final PauseTransition searchDelay = new PauseTransition(Duration.millis(200));
+    private CompletableFuture<List<Book>> pendingSearch;
+
+    // Latest load per table, so a slow older load can't overwrite a newer one
+    private final Map<TableView<?>, CompletableFuture<?>> pendingLoads = new HashMap<>();
+
+    // Position in the change log up to which the tables are current
+    private long lastAppliedChange;
+    private boolean applyingChanges;
+    private boolean changesPending;
+
     public void initialize() {
-        // Set up book table
-        bookIdColumn.setCellValueFactory(cellData -> cellData.getValue().getIdProperty());
-        bookTitleColumn.setCellValueFactory(cellData -> cellData.getValue().getTitleProperty());
-        bookAuthorColumn.setCellValueFactory(cellData -> cellData.getValue().getAuthor().getFullNameProperty());
-        bookGenreColumn.setCellValueFactory(cellData -> cellData.getValue().getGenreProperty());
-        bookYearColumn.setCellValueFactory(cellData -> cellData.getValue().getYearProperty());
-        bookRatingColumn.setCellValueFactory(cellData -> {
-            var rating = cellData.getValue().getAverageRating();
+        // Set up book table, its rows are null until their page has loaded
+        bookIdColumn.setCellValueFactory(cellData -> bookCell(cellData, Book::getIdProperty));
+        bookTitleColumn.setCellValueFactory(cellData -> bookCell(cellData, Book::getTitleProperty));
+        bookAuthorColumn.setCellValueFactory(cellData -> bookCell(cellData, Book::getAuthorNameProperty));
+        bookGenreColumn.setCellValueFactory(cellData -> bookCell(cellData, Book::getGenreProperty));
+        bookYearColumn.setCellValueFactory(cellData -> bookCell(cellData, Book::getYearProperty));
+        bookAuthorColumn.setSortable(false);
+        bookRatingColumn.setSortable(false);
+        bookReservedColumn.setSortable(false);
+        bookRatingColumn.setCellValueFactory(cellData -> bookCell(cellData, book -> {
+            var rating = book.getAverageRatingProperty().get();
             var txt = rating != 0 ? rating + " stars" : "No ratings";
             return new SimpleStringProperty(txt);
-        });
-        bookReservedColumn.setCellValueFactory(cellData -> {
-            if (cellData.getValue().isReserved()) {
-                var mem = cellData.getValue().getReservedByMember();
+        }));
+        bookReservedColumn.setCellValueFactory(cellData -> bookCell(cellData, book -> {
+            var reservedBy = book.getReservedByNameProperty();
 
-                if (mem != null) return mem.getFullNameProperty();
-            }
+            if (reservedBy.get() != null) return reservedBy;
 
             return new SimpleStringProperty("Not reserved");
-        });
+        }));
 
         // Set up author table
         authorIdColumn.setCellValueFactory(cellData -> cellData.getValue().getIdProperty());
         authorNameColumn.setCellValueFactory(cellData -> cellData.getValue().getFullNameProperty());
-        authorBookCountColumn.setCellValueFactory(cellData -> new SimpleIntegerProperty(Objects.requireNonNull(Book.getByAuthor(cellData.getValue().getIdProperty().get())).size()));
+        authorBookCountColumn.setCellValueFactory(cellData -> cellData.getValue().getBookCountProperty());
         authorAverageRatingColumn.setCellValueFactory(cellData -> {
-            var rating = cellData.getValue().getAverageRating();
+            var rating = cellData.getValue().getAverageRatingProperty().get();
             var ratingString = rating != 0 ? rating + " stars" : "No ratings";
             return new SimpleStringProperty(ratingString);
         });
@@ -100,16 +135,55 @@ public class MainController {
         // Set up member table
         memberIdColumn.setCellValueFactory(cellData -> cellData.getValue().getIdProperty());
         memberNameColumn.setCellValueFactory(cellData -> cellData.getValue().getFullNameProperty());
-        memberReviewNumberColumn.setCellValueFactory(cellData -> new SimpleIntegerProperty(cellData.getValue().getReviews().size()));
+        memberReviewNumberColumn.setCellValueFactory(cellData -> cellData.getValue().getReviewCountProperty());
+
+        // The book table is paged from the database, so sorting happens there too
+        var sortKeys = Map.of(
+                bookIdColumn, Book.SortKey.ID,
+                bookTitleColumn, Book.SortKey.TITLE,
+                bookGenreColumn, Book.SortKey.GENRE,
+                bookYearColumn, Book.SortKey.YEAR
+        );
+        bookTableView.setSortPolicy(table -> {
+            // Search results are a small in-memory list and are sorted as usual
+            if (table.getItems() != books) {
+                return TableView.DEFAULT_SORT_POLICY.call(table);
+            }
+
+            var sortOrder = table.getSortOrder();
+            if (sortOrder.isEmpty()) {
+                books.setSort(Book.SortKey.ID, true);
+            } else {
+                var column = sortOrder.get(0);
+                books.setSort(sortKeys.getOrDefault(column, Book.SortKey.ID), column.getSortType() == TableColumn.SortType.ASCENDING);
+            }
+            return true;
+        });
 
         // Add data to tables
         bookTableView.setItems(books);
         authorTableView.setItems(authors);
         memberTableView.setItems(members);
 
-        books.addAll(Book.getBooks());
-        authors.addAll(Author.getAuthors());
-        members.addAll(Member.getMembers());
+        // Remember where the change log stands before loading, so no change can slip between the two
+        var startingPoint = DatabaseExecutor.supply(() -> {
+            try {
+                return ChangeLog.latestSequence();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return 0L;
+            }
+        });
+        onFxThread(startingPoint, sequence -> {
+            lastAppliedChange = sequence;
+            refreshBooks();
+            refreshAuthors();
+            refreshMembers();
+        });
+
+        // Search once typing pauses, instead of on every keystroke
+        searchDelay.setOnFinished(e -> runSearch());
+        bookSearchField.textProperty().addListener((observable, oldText, newText) -> searchDelay.playFromStart());
 
         bookTableView.setOnMouseClicked(e -> {
             if (e.getClickCount() > 2) {
@@ -121,16 +195,16 @@ public class MainController {
     public void handleCreateBook() {
         var dialog = new CreateBookDialog((Stage) createBookButton.getScene().getWindow());
         dialog.showAndWait();
-        refreshBooks();
-        refreshAuthors();
+        applyChanges();
     }
 
     public void handleDeleteBook() {
         var selectedBook = bookTableView.getSelectionModel().getSelectedItem();
         if (selectedBook != null) {
-            selectedBook.delete();
-            refreshBooks();
-            showSuccess("Book deleted successfully");
+            onFxThread(DatabaseExecutor.run(selectedBook::delete), ignored -> {
+                applyChanges();
+                showSuccess("Book deleted successfully");
+            });
         }
     }
 
@@ -139,8 +213,7 @@ public class MainController {
         dialog.showAndWait().ifPresent(fullName -> {
             if (!fullName.isEmpty()) {
                 System.out.println("Creating author: " + fullName);
-                Author.create(fullName);
-                refreshAuthors();
+                onFxThread(DatabaseExecutor.run(() -> Author.create(fullName)), ignored -> applyChanges());
             }
         });
     }
@@ -154,17 +227,16 @@ public class MainController {
 
         var dialog = new BookManagementDialog((Stage) createMemberButton.getScene().getWindow(), book);
         dialog.showAndWait();
-        refreshAuthors();
-        refreshBooks();
-        refreshMembers();
+        applyChanges();
     }
 
     public void handleDeleteAuthor() {
         var selectedAuthor = authorTableView.getSelectionModel().getSelectedItem();
         if (selectedAuthor != null) {
-            selectedAuthor.delete();
-            refreshAuthors();
-            showSuccess("Author deleted successfully");
+            onFxThread(DatabaseExecutor.run(selectedAuthor::delete), ignored -> {
+                applyChanges();
+                showSuccess("Author deleted successfully");
+            });
         }
     }
 
@@ -173,8 +245,7 @@ public class MainController {
         dialog.showAndWait().ifPresent(fullName -> {
             if (!fullName.isEmpty()) {
                 System.out.println("Creating member: " + fullName);
-                Member.create(fullName);
-                refreshMembers();
+                onFxThread(DatabaseExecutor.run(() -> Member.create(fullName)), ignored -> applyChanges());
             }
         });
     }
@@ -182,24 +253,266 @@ public class MainController {
     public void handleDeleteMember() {
         var selectedMember = memberTableView.getSelectionModel().getSelectedItem();
         if (selectedMember != null) {
-            selectedMember.delete();
+            onFxThread(DatabaseExecutor.run(selectedMember::delete), ignored -> {
+                applyChanges();
+                showSuccess("Member deleted successfully");
+            });
+        }
+    }
+
+    public void handleImportBooks() {
+        importFile(CatalogImporter.Kind.BOOKS);
+    }
+
+    public void handleImportAuthors() {
+        importFile(CatalogImporter.Kind.AUTHORS);
+    }
+
+    public void handleImportMembers() {
+        importFile(CatalogImporter.Kind.MEMBERS);
+    }
+
+    private void importFile(CatalogImporter.Kind kind) {
+        var stage = (Stage) createBookButton.getScene().getWindow();
+        var chooser = new FileChooser();
+        chooser.setTitle("Import " + kind.name().toLowerCase());
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV or JSON files", "*.csv", "*.json", "*.jsonl", "*.ndjson"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+
+        var file = chooser.showOpenDialog(stage);
+        if (file == null) {
+            return;
+        }
+
+        var dialog = new ImportDialog(stage, kind, file.toPath());
+        dialog.show();
+        onFxThread(dialog.getImportResult().handle((result, error) -> result), ignored -> applyChanges());
+    }
+
+    public void handleExport() {
+        var stage = (Stage) createBookButton.getScene().getWindow();
+
+        var kindDialog = new ChoiceDialog<>(CatalogExporter.Kind.BOOKS, CatalogExporter.Kind.values());
+        kindDialog.initOwner(stage);
+        kindDialog.setTitle("Export");
+        kindDialog.setHeaderText("What should be exported?");
+        var kind = kindDialog.showAndWait();
+        if (kind.isEmpty()) {
+            return;
+        }
+
+        var chooser = new FileChooser();
+        chooser.setTitle("Export " + kind.get().name().toLowerCase());
+        chooser.setInitialFileName(kind.get().name().toLowerCase() + ".csv");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("JSON Lines", "*.jsonl"),
+                new FileChooser.ExtensionFilter("Compressed", "*.csv.gz", "*.jsonl.gz"));
+
+        var file = chooser.showSaveDialog(stage);
+        if (file == null) {
+            return;
+        }
+
+        CatalogExporter exporter;
+        try {
+            exporter = CatalogExporter.forFile(kind.get(), file.toPath());
+        } catch (IllegalArgumentException e) {
+            showError(e.getMessage());
+            return;
+        }
+
+        DatabaseExecutor.supplyLongRunning("catalog-export", () -> {
+            try {
+                return exporter.run(file.toPath());
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }).whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                showError("An error occurred while exporting to " + file.getName());
+                error.printStackTrace();
+                return;
+            }
+
+            showSuccess(String.format("Exported %,d rows to %s", result.rows(), file.getName()));
+        }));
+    }
+
+    private void runSearch() {
+        var text = bookSearchField.getText();
+
+        if (text == null || text.isBlank()) {
+            pendingSearch = null;
+            bookTableView.setItems(books);
+            return;
+        }
+
+        var search = Book.searchAsync(text, SEARCH_RESULT_LIMIT, 0);
+        pendingSearch = search;
+
+        onFxThread(search, results -> {
+            if (pendingSearch != search) {
+                return;
+            }
+
+            searchResults.setAll(results);
+            bookTableView.setItems(searchResults);
+        });
+    }
+
+    /**
+     * Brings the tables up to date with the change log: deleted rows are removed, inserted and updated
+     * rows are re-read by id, and nothing else is touched.
+     */
+    private void applyChanges() {
+        if (applyingChanges) {
+            changesPending = true;
+            return;
+        }
+
+        applyingChanges = true;
+        var since = lastAppliedChange;
+
+        DatabaseExecutor.supply(() -> loadChanges(since)).whenComplete((batch, error) -> Platform.runLater(() -> {
+            // Whatever the outcome, the next change has to be able to start another pass
+            try {
+                if (error != null) {
+                    showError("An error occurred while loading changes");
+                    error.printStackTrace();
+                } else {
+                    applyBatch(batch);
+                }
+            } finally {
+                applyingChanges = false;
+            }
+
+            if (changesPending) {
+                changesPending = false;
+                applyChanges();
+            } else if (error == null && batch != null) {
+                // Caught up, entries older than the retention period are no longer needed here
+                DatabaseExecutor.run(ChangeLog::pruneIfDue);
+            }
+        }));
+    }
+
+    private void applyBatch(ChangeBatch batch) {
+        if (batch == null || batch.truncated()) {
+            refreshBooks();
+            refreshAuthors();
             refreshMembers();
-            showSuccess("Member deleted successfully");
+        } else {
+            if (pendingSearch != null && !batch.books().isEmpty()) {
+                runSearch();
+            }
+
+            if (!batch.books().inserted().isEmpty() || !batch.books().deleted().isEmpty()) {
+                books.refresh();
+            } else if (!batch.books().updated().isEmpty()) {
+                books.reload(batch.books().updated());
+            }
+
+            applyDelta(authors, batch.authors().deleted(), batch.changedAuthors(), author -> author.getIdProperty().get());
+            applyDelta(members, batch.members().deleted(), batch.changedMembers(), member -> member.getIdProperty().get());
+        }
+
+        if (batch != null) {
+            lastAppliedChange = batch.lastSequence();
         }
     }
 
+    // Runs in the background: reads the change log and the rows it points at
+    private static ChangeBatch loadChanges(long since) {
+        try {
+            // Taken before the full reload it may lead to, changes made during the reload are applied again later
+            var latest = ChangeLog.latestSequence();
+            var changes = ChangeLog.changesSince(since);
+            var lastSequence = changes.isEmpty() ? since : changes.get(changes.size() - 1).sequence();
+
+            if (ChangeLog.isTruncated(changes) || ChangeLog.isPrunedAfter(since)) {
+                return new ChangeBatch(latest, true, null, null, null, List.of(), List.of());
+            }
+
+            var bookDelta = ChangeLog.deltaFor(changes, "books");
+            var authorDelta = ChangeLog.deltaFor(changes, "authors");
+            var memberDelta = ChangeLog.deltaFor(changes, "members");
+
+            var changedAuthors = authorDelta.upserted().isEmpty() ? List.<Author>of() : Author.getAuthorsWithStatistics(authorDelta.upserted());
+            var changedMembers = memberDelta.upserted().isEmpty() ? List.<Member>of() : Member.getByIds(memberDelta.upserted());
+
+            return new ChangeBatch(lastSequence, false, bookDelta, authorDelta, memberDelta, changedAuthors, changedMembers);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static <T> void applyDelta(ObservableList<T> items, Set<Integer> deleted, List<T> changed, Function<T, Integer> idOf) {
+        if (!deleted.isEmpty()) {
+            items.removeIf(item -> deleted.contains(idOf.apply(item)));
+        }
+
+        var positions = new HashMap<Integer, Integer>();
+        for (int i = 0; i < items.size(); i++) {
+            positions.put(idOf.apply(items.get(i)), i);
+        }
+
+        for (var item : changed) {
+            var position = positions.get(idOf.apply(item));
+
+            if (position != null) {
+                items.set(position, item);
+            } else {
+                items.add(item);
+            }
+        }
+    }
+
+    private record ChangeBatch(long lastSequence, boolean truncated, ChangeLog.Delta books, ChangeLog.Delta authors,
+                               ChangeLog.Delta members, List<Author> changedAuthors, List<Member> changedMembers) {
+    }
+
     private void refreshMembers() {
-        members.clear();
-        members.addAll(Member.getMembers());
+        load(memberTableView, members, Member.getMembersWithReviewCountsAsync());
     }
 
     private void refreshBooks() {
-        books.clear();
-        books.addAll(Book.getBooks());
+        if (books.isEmpty()) {
+            bookTableView.setPlaceholder(new ProgressIndicator());
+        }
+
+        books.refresh().thenRun(() -> bookTableView.setPlaceholder(null));
     }
 
     private void refreshAuthors() {
-        authors.clear();
-        authors.addAll(Author.getAuthors());
+        load(authorTableView, authors, Author.getAuthorsWithStatisticsAsync());
+    }
+
+    // Empty cell for a row of the paged book list that hasn't loaded yet
+    private static <T> ObservableValue<T> bookCell(TableColumn.CellDataFeatures<Book, T> cellData,
+                                                   Function<Book, ? extends ObservableValue<T>> property) {
+        var book = cellData.getValue();
+        return book != null ? property.apply(book) : null;
+    }
+
+    // Keeps the current rows visible while reloading, and shows a progress indicator while a table is still empty
+    private <T> void load(TableView<T> table, ObservableList<T> items, CompletableFuture<List<T>> future) {
+        pendingLoads.put(table, future);
+
+        if (items.isEmpty()) {
+            table.setPlaceholder(new ProgressIndicator());
+        }
+
+        onFxThread(future, result -> {
+            if (pendingLoads.get(table) != future) {
+                return;
+            }
+
+            pendingLoads.remove(table);
+            items.setAll(result);
+            table.setPlaceholder(null);
+        });
     }
-}
\ No newline at end of file
+}
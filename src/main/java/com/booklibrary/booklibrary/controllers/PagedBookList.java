@@ -0,0 +1,245 @@
+package com.booklibrary.booklibrary.controllers;
+
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.datatypes.Book;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static com.booklibrary.booklibrary.utils.Utils.onFxThread;
+import static com.booklibrary.booklibrary.utils.Utils.showError;
+
+/**
+ * Read-only list of book listings for the book table that only keeps a few pages in memory.
+ * <p>
+ * Rows that aren't loaded yet are reported as null, so cell value factories must accept a null row;
+ * requesting one loads its page in the background through a keyset query and fires a replace change once it
+ * arrives. A page that comes back short ends the list there, in case books were deleted since the count.
+ * Only the most recently used pages are kept, so memory stays flat however large the catalog is. Must only
+ * be used from the FX thread.
+ */
+public class PagedBookList extends ObservableListBase<Book> {
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_CACHED_PAGES = 12;
+
+    private final Map<Integer, List<Book>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Book>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // Cursor of the last row before each page, so the next page can be fetched without OFFSET
+    private final Map<Integer, Book.Cursor> anchors = new HashMap<>();
+    private final Set<Integer> pendingPages = new HashSet<>();
+
+    private Book.SortKey sortKey = Book.SortKey.ID;
+    private boolean ascending = true;
+    private int size;
+    private int generation;
+
+    @Override
+    public Book get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        var page = index / PAGE_SIZE;
+        var rows = pages.get(page);
+
+        if (rows == null) {
+            requestPage(page);
+            return null;
+        }
+
+        var offset = index % PAGE_SIZE;
+        return offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public Book.SortKey getSortKey() {
+        return sortKey;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public CompletableFuture<Void> setSort(Book.SortKey sortKey, boolean ascending) {
+        if (this.sortKey == sortKey && this.ascending == ascending) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        this.sortKey = sortKey;
+        this.ascending = ascending;
+        return refresh();
+    }
+
+    /**
+     * Drops every loaded page and re-reads the row count; rows are reloaded as the table asks for them,
+     * so the scroll position is kept. The returned future completes on the FX thread once the new size
+     * has been applied.
+     */
+    public CompletableFuture<Void> refresh() {
+        var requested = ++generation;
+        var done = new CompletableFuture<Void>();
+
+        onFxThread(DatabaseExecutor.supply(Book::count), count -> {
+            if (requested == generation) {
+                pages.clear();
+                anchors.clear();
+                pendingPages.clear();
+
+                var oldSize = size;
+                var kept = Math.min(oldSize, count);
+                size = count;
+
+                beginChange();
+                if (kept > 0) {
+                    nextReplace(0, kept, Collections.nCopies(kept, null));
+                }
+                if (count < oldSize) {
+                    nextRemove(count, Collections.nCopies(oldSize - count, null));
+                } else if (count > oldSize) {
+                    nextAdd(oldSize, count);
+                }
+                endChange();
+            }
+
+            done.complete(null);
+        });
+
+        return done;
+    }
+
+    // Re-reads the given books if they are on a loaded page, leaving every other row untouched
+    public void reload(Collection<Integer> ids) {
+        var loadedIds = pages.values().stream()
+                .flatMap(List::stream)
+                .map(book -> book.getIdProperty().get())
+                .filter(ids::contains)
+                .toList();
+
+        if (loadedIds.isEmpty()) {
+            return;
+        }
+
+        var requested = generation;
+        onFxThread(DatabaseExecutor.supply(() -> Book.getBookListingsByIds(loadedIds)), fresh -> {
+            if (requested != generation) {
+                return;
+            }
+
+            beginChange();
+            for (var book : fresh) {
+                replaceLoaded(book);
+            }
+            endChange();
+        });
+    }
+
+    private void replaceLoaded(Book book) {
+        var id = book.getIdProperty().get();
+
+        for (var page : pages.entrySet()) {
+            var rows = page.getValue();
+
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).getIdProperty().get() == id) {
+                    var old = rows.set(i, book);
+                    nextSet(page.getKey() * PAGE_SIZE + i, old);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void requestPage(int page) {
+        if (!pendingPages.add(page)) {
+            return;
+        }
+
+        var requested = generation;
+        var key = sortKey;
+        var asc = ascending;
+        var anchor = anchors.get(page);
+
+        var loaded = DatabaseExecutor.supply(() -> {
+            var after = anchor;
+            if (after == null && page > 0) {
+                after = Book.getCursorAt(key, asc, page * PAGE_SIZE - 1);
+                if (after == null) {
+                    // The catalog no longer reaches this page
+                    return List.<Book>of();
+                }
+            }
+
+            return Book.getBookListingsPage(key, asc, after, PAGE_SIZE);
+        });
+
+        loaded.whenComplete((rows, error) -> Platform.runLater(() -> {
+            if (requested != generation) {
+                return;
+            }
+
+            // Whatever the outcome, the page can be requested again
+            pendingPages.remove(page);
+
+            if (error != null) {
+                showError("An error occurred while loading books");
+                error.printStackTrace();
+                return;
+            }
+
+            showPage(page, key, rows);
+        }));
+    }
+
+    private void showPage(int page, Book.SortKey key, List<Book> rows) {
+        var from = page * PAGE_SIZE;
+        if (from >= size) {
+            return;
+        }
+
+        pages.put(page, rows);
+        if (!rows.isEmpty()) {
+            anchors.put(page + 1, rows.get(rows.size() - 1).getCursor(key));
+        }
+
+        var end = from + rows.size();
+        if (rows.size() < PAGE_SIZE && end < size) {
+            // Books were deleted since the count, the listing ends with this page
+            var oldSize = size;
+            size = end;
+            pages.keySet().removeIf(other -> other > page);
+            anchors.keySet().removeIf(other -> other > page + 1);
+
+            beginChange();
+            if (from < end) {
+                nextReplace(from, end, Collections.nCopies(end - from, null));
+            }
+            nextRemove(end, Collections.nCopies(oldSize - end, null));
+            endChange();
+            return;
+        }
+
+        var to = Math.min(end, size);
+        if (from < to) {
+            beginChange();
+            nextReplace(from, to, Collections.nCopies(to - from, null));
+            endChange();
+        }
+    }
+}
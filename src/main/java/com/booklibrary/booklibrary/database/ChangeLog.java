@@ -0,0 +1,282 @@
+package com.booklibrary.booklibrary.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of row changes, filled by triggers so every write path is covered. Each entry gets a
+ * monotonic sequence number; readers remember the last one they applied and ask for everything after it.
+ * <p>
+ * Triggers also log the rows whose derived values change: a new review marks its book, member and author
+ * as updated, and adding or removing a book marks its author as updated.
+ * <p>
+ * Entries are kept for a retention period ({@code booklibrary.changelog.retentionMinutes}, default 10) and
+ * pruned when the database is opened and whenever a reader has caught up. A reader that falls further
+ * behind than that finds a gap before its next entry and has to reload everything.
+ */
+public final class ChangeLog {
+    private static final int MAX_CHANGES_PER_QUERY = 10_000;
+    private static final String RETENTION_PROPERTY = "booklibrary.changelog.retentionMinutes";
+    private static final long DEFAULT_RETENTION_MINUTES = 10;
+    // Deleted in chunks, so a large backlog doesn't hold the writer for long
+    private static final int PRUNE_CHUNK = 10_000;
+    private static final long PRUNE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final AtomicLong lastPrunedAt = new AtomicLong(System.nanoTime());
+
+    private static final String[] SCHEMA = {
+            """
+            CREATE TABLE IF NOT EXISTS change_log (
+                seq        INTEGER PRIMARY KEY AUTOINCREMENT,
+                table_name TEXT      NOT NULL,
+                row_id     INTEGER   NOT NULL,
+                operation  TEXT      NOT NULL CHECK (operation IN ('I', 'U', 'D')),
+                changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+            )""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_books_insert AFTER INSERT ON books BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.id, 'I'), ('authors', NEW.author_id, 'U');
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_books_update AFTER UPDATE ON books BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', NEW.id, 'U');
+                INSERT INTO change_log (table_name, row_id, operation)
+                    SELECT 'authors', author_id, 'U' FROM (SELECT OLD.author_id AS author_id UNION SELECT NEW.author_id)
+                    WHERE OLD.author_id IS NOT NEW.author_id;
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_books_delete AFTER DELETE ON books BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('books', OLD.id, 'D'), ('authors', OLD.author_id, 'U');
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_authors_insert AFTER INSERT ON authors BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('authors', NEW.id, 'I');
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_authors_update AFTER UPDATE ON authors BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('authors', NEW.id, 'U');
+                INSERT INTO change_log (table_name, row_id, operation) SELECT 'books', id, 'U' FROM books WHERE author_id = NEW.id;
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_authors_delete AFTER DELETE ON authors BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('authors', OLD.id, 'D');
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_members_insert AFTER INSERT ON members BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('members', NEW.id, 'I');
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_members_update AFTER UPDATE ON members BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('members', NEW.id, 'U');
+                INSERT INTO change_log (table_name, row_id, operation) SELECT 'books', id, 'U' FROM books WHERE reserved_by = NEW.id;
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_members_delete AFTER DELETE ON members BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('members', OLD.id, 'D');
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_reviews_insert AFTER INSERT ON reviews BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('reviews', NEW.id, 'I'), ('books', NEW.book_id, 'U'), ('members', NEW.member_id, 'U');
+                INSERT INTO change_log (table_name, row_id, operation) SELECT 'authors', author_id, 'U' FROM books WHERE id = NEW.book_id;
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_reviews_update AFTER UPDATE ON reviews BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('reviews', NEW.id, 'U'), ('books', NEW.book_id, 'U'), ('members', NEW.member_id, 'U');
+                INSERT INTO change_log (table_name, row_id, operation) SELECT 'authors', author_id, 'U' FROM books WHERE id = NEW.book_id;
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_reviews_delete AFTER DELETE ON reviews BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('reviews', OLD.id, 'D'), ('books', OLD.book_id, 'U'), ('members', OLD.member_id, 'U');
+                INSERT INTO change_log (table_name, row_id, operation) SELECT 'authors', author_id, 'U' FROM books WHERE id = OLD.book_id;
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_reservation_records_insert AFTER INSERT ON reservation_records BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('reservation_records', NEW.id, 'I');
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_reservation_records_update AFTER UPDATE ON reservation_records BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('reservation_records', NEW.id, 'U');
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS change_log_reservation_records_delete AFTER DELETE ON reservation_records BEGIN
+                INSERT INTO change_log (table_name, row_id, operation) VALUES ('reservation_records', OLD.id, 'D');
+            END"""
+    };
+
+    private ChangeLog() {
+    }
+
+    public enum Operation {
+        INSERT, UPDATE, DELETE;
+
+        static Operation fromCode(String code) {
+            return switch (code) {
+                case "I" -> INSERT;
+                case "U" -> UPDATE;
+                default -> DELETE;
+            };
+        }
+    }
+
+    public record Change(long sequence, String table, int rowId, Operation operation) {
+    }
+
+    // Net effect of a batch of changes on one table
+    public record Delta(Set<Integer> inserted, Set<Integer> updated, Set<Integer> deleted) {
+        public boolean isEmpty() {
+            return inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+        }
+
+        public Set<Integer> upserted() {
+            var ids = new LinkedHashSet<>(inserted);
+            ids.addAll(updated);
+            return ids;
+        }
+    }
+
+    static void install(Connection connection) throws SQLException {
+        try (var stmt = connection.createStatement()) {
+            for (var sql : SCHEMA) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Returns the sequence number of the latest logged change. It is taken from the AUTOINCREMENT counter
+     * rather than the log itself, so it keeps growing when the log is pruned and can tell two states of the
+     * data apart, e.g. in HTTP ETags.
+     */
+    public static long latestSequence() throws SQLException {
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare("SELECT COALESCE(MAX(seq), 0) FROM sqlite_sequence WHERE name = 'change_log'");
+
+            try (var rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    // Whether entries after the given sequence number have already been pruned, so changesSince would miss them
+    public static boolean isPrunedAfter(long sequence) throws SQLException {
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare("SELECT MIN(seq) FROM change_log");
+
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getObject(1) != null) {
+                    return rs.getLong(1) > sequence + 1;
+                }
+            }
+        }
+
+        // An empty log only has a gap if something was logged after the sequence
+        return latestSequence() > sequence;
+    }
+
+    /**
+     * Returns the changes logged after the given sequence number, oldest first. At most
+     * {@value #MAX_CHANGES_PER_QUERY} changes are returned per call; callers that get a full batch should
+     * fall back to a full reload.
+     */
+    public static List<Change> changesSince(long sequence) throws SQLException {
+        var changes = new ArrayList<Change>();
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare("SELECT seq, table_name, row_id, operation FROM change_log WHERE seq > ? ORDER BY seq LIMIT ?");
+            stmt.setLong(1, sequence);
+            stmt.setInt(2, MAX_CHANGES_PER_QUERY);
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new Change(rs.getLong(1), rs.getString(2), rs.getInt(3), Operation.fromCode(rs.getString(4))));
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    public static Delta deltaFor(List<Change> changes, String table) {
+        var inserted = new LinkedHashSet<Integer>();
+        var updated = new LinkedHashSet<Integer>();
+        var deleted = new LinkedHashSet<Integer>();
+
+        for (var change : changes) {
+            if (!change.table().equals(table)) {
+                continue;
+            }
+
+            var id = change.rowId();
+            switch (change.operation()) {
+                case INSERT -> {
+                    deleted.remove(id);
+                    inserted.add(id);
+                }
+                case UPDATE -> {
+                    if (!inserted.contains(id) && !deleted.contains(id)) {
+                        updated.add(id);
+                    }
+                }
+                case DELETE -> {
+                    // A row created and removed within the batch never reached the reader
+                    if (!inserted.remove(id)) {
+                        deleted.add(id);
+                    }
+                    updated.remove(id);
+                }
+            }
+        }
+
+        return new Delta(inserted, updated, deleted);
+    }
+
+    public static boolean isTruncated(List<Change> changes) {
+        return changes.size() >= MAX_CHANGES_PER_QUERY;
+    }
+
+    // Prunes expired entries unless that was done within the last minute
+    public static void pruneIfDue() {
+        var last = lastPrunedAt.get();
+        var now = System.nanoTime();
+        if (now - last < PRUNE_INTERVAL_NANOS || !lastPrunedAt.compareAndSet(last, now)) {
+            return;
+        }
+
+        try {
+            int deleted;
+            do {
+                try (var conn = Database.getInstance().writer()) {
+                    deleted = pruneChunk(conn.getConnection());
+                }
+            } while (deleted == PRUNE_CHUNK);
+        } catch (SQLException e) {
+            System.err.println("Error pruning the change log: " + e.getMessage());
+        }
+    }
+
+    // Removes every entry older than the retention period
+    static void prune(Connection connection) throws SQLException {
+        int deleted;
+        do {
+            deleted = pruneChunk(connection);
+        } while (deleted == PRUNE_CHUNK);
+    }
+
+    private static int pruneChunk(Connection connection) throws SQLException {
+        var retentionMinutes = Long.getLong(RETENTION_PROPERTY, DEFAULT_RETENTION_MINUTES);
+        var query = "DELETE FROM change_log WHERE seq IN "
+                + "(SELECT seq FROM change_log WHERE changed_at < datetime('now', ?) ORDER BY seq LIMIT ?)";
+
+        try (var stmt = connection.prepareStatement(query)) {
+            stmt.setString(1, "-" + retentionMinutes + " minutes");
+            stmt.setInt(2, PRUNE_CHUNK);
+            return stmt.executeUpdate();
+        }
+    }
+}
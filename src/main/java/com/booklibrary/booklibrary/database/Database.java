@@ -1,41 +1,237 @@
-
 package com.booklibrary.booklibrary.database;
 
-import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Owns the SQLite connections of the application: a single writer connection and a bounded pool of
+ * read-only connections. The database runs in WAL mode so readers never block the writer or each other.
+ * <p>
+ * The schema is brought up to date by {@link Migrations} when the database is opened.
+ * <p>
+ * The database file is taken from {@link #configure(String)}, the {@code booklibrary.db.path} system
+ * property or the {@code BOOKLIBRARY_DB_PATH} environment variable, in that order.
+ */
 public final class Database {
-    private static final String DB_URL = "jdbc:sqlite:/home/ivan/Workspace/BookLibrary/database/test.db";
-    private static Database instance = null;
-    private Connection connection;
+    private static final String PATH_PROPERTY = "booklibrary.db.path";
+    private static final String PATH_ENV = "BOOKLIBRARY_DB_PATH";
+    private static final String READERS_PROPERTY = "booklibrary.db.readers";
+    private static final String DEFAULT_PATH = "database/test.db";
+    private static final String BUSY_TIMEOUT_MILLIS = "5000";
+    private static final String SQLITE_OPEN_READONLY = "1";
+    private static final long LEASE_TIMEOUT_SECONDS = 30;
+
+    private static volatile Database instance;
+    private static String configuredPath;
 
+    private final String url;
+    private final int maxReaders;
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private final BlockingQueue<PooledConnection> idleReaders = new LinkedBlockingQueue<>();
+    private final AtomicInteger openReaders = new AtomicInteger();
+    private volatile PooledConnection writer;
+    private volatile boolean closed;
+
+    private Database(String path, int maxReaders) {
+        this.url = "jdbc:sqlite:" + path;
+        this.maxReaders = maxReaders;
 
-    private Database() {
         try {
-            connection = DriverManager.getConnection(DB_URL);
+            writer = openWriter();
+            Migrations.migrate(writer.getConnection());
+
+            for (var problem : Migrations.verifyQueryPlans(writer.getConnection())) {
+                System.err.println("Query is not served by an index: " + problem);
+            }
+
+            ChangeLog.prune(writer.getConnection());
         } catch (SQLException e) {
             System.err.println("Error connecting to the database: " + e.getMessage());
         }
     }
 
     public static Database getInstance() {
-        if (instance == null) {
-            instance = new Database();
+        var db = instance;
+        if (db == null) {
+            synchronized (Database.class) {
+                db = instance;
+                if (db == null) {
+                    db = new Database(resolvePath(), resolveMaxReaders());
+                    instance = db;
+                }
+            }
         }
 
-        return instance;
+        return db;
     }
 
-    public Connection getConnection() {
-        return connection;
+    // Must be called before the first getInstance() call
+    public static synchronized void configure(String path) {
+        if (instance != null) {
+            throw new IllegalStateException("The database has already been opened");
+        }
+
+        configuredPath = path;
     }
 
-    public void closeConnection() {
+    private static synchronized String resolvePath() {
+        if (configuredPath != null) {
+            return configuredPath;
+        }
+
+        var path = System.getProperty(PATH_PROPERTY);
+        if (path == null || path.isBlank()) {
+            path = System.getenv(PATH_ENV);
+        }
+
+        return path == null || path.isBlank() ? DEFAULT_PATH : path;
+    }
+
+    // Reader pool size from the settings, without opening the database
+    static int resolveMaxReaders() {
+        var fallback = Math.max(2, Runtime.getRuntime().availableProcessors());
+
         try {
-            connection.close();
+            return Math.max(1, Integer.parseInt(System.getProperty(READERS_PROPERTY, String.valueOf(fallback))));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * Leases the writer connection. Only one thread holds the writer at a time; close the lease to release it.
+     */
+    public PooledConnection writer() throws SQLException {
+        ensureOpen();
+        writerLock.lock();
+
+        try {
+            if (writer == null || !writer.isHealthy()) {
+                if (writer != null) {
+                    writer.closeQuietly();
+                }
+                writer = openWriter();
+            }
         } catch (SQLException e) {
-            System.err.println("Error closing the database connection: " + e.getMessage());
+            writerLock.unlock();
+            throw e;
         }
+
+        writer.markLeased();
+        return writer;
+    }
+
+    /**
+     * Leases a read-only connection from the pool, opening a new one while the pool is below its bound.
+     * Close the lease to hand the connection back.
+     */
+    public PooledConnection reader() throws SQLException {
+        ensureOpen();
+
+        while (true) {
+            var reader = idleReaders.poll();
+
+            if (reader == null && openReaders.incrementAndGet() <= maxReaders) {
+                try {
+                    reader = openReader();
+                } catch (SQLException e) {
+                    openReaders.decrementAndGet();
+                    throw e;
+                }
+            } else if (reader == null) {
+                openReaders.decrementAndGet();
+
+                try {
+                    reader = idleReaders.poll(LEASE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection", e);
+                }
+
+                if (reader == null) {
+                    throw new SQLException("Timed out waiting for a database connection");
+                }
+            }
+
+            if (reader.isHealthy()) {
+                reader.markLeased();
+                return reader;
+            }
+
+            reader.closeQuietly();
+            openReaders.decrementAndGet();
+        }
+    }
+
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    public int getOpenReaders() {
+        return openReaders.get();
+    }
+
+    public int getIdleReaders() {
+        return idleReaders.size();
+    }
+
+    public void closeConnection() {
+        closed = true;
+
+        PooledConnection reader;
+        while ((reader = idleReaders.poll()) != null) {
+            reader.closeQuietly();
+            openReaders.decrementAndGet();
+        }
+
+        writerLock.lock();
+        try {
+            if (writer != null) {
+                writer.closeQuietly();
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("The database has been closed");
+        }
+    }
+
+    private PooledConnection openWriter() throws SQLException {
+        var props = new Properties();
+        props.setProperty("journal_mode", "WAL");
+        props.setProperty("busy_timeout", BUSY_TIMEOUT_MILLIS);
+        // Take the write lock when a transaction begins: a transaction that reads first and then has to
+        // upgrade fails at once with SQLITE_BUSY when another process writes, the busy timeout can't help
+        props.setProperty("transaction_mode", "IMMEDIATE");
+
+        return new PooledConnection(DriverManager.getConnection(url, props), connection -> writerLock.unlock());
+    }
+
+    private PooledConnection openReader() throws SQLException {
+        var props = new Properties();
+        props.setProperty("open_mode", SQLITE_OPEN_READONLY);
+        props.setProperty("busy_timeout", BUSY_TIMEOUT_MILLIS);
+
+        return new PooledConnection(DriverManager.getConnection(url, props), this::releaseReader);
+    }
+
+    private void releaseReader(PooledConnection reader) {
+        if (closed) {
+            reader.closeQuietly();
+            openReaders.decrementAndGet();
+            return;
+        }
+
+        idleReaders.offer(reader);
     }
 }
@@ -0,0 +1,69 @@
+package com.booklibrary.booklibrary.database;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs database work off the JavaFX application thread. Uses a virtual thread per task when the runtime
+ * supports it (Java 21+), otherwise a pool of daemon threads with one thread per pooled reader connection.
+ * Work that takes much longer than a query, like an import or an export, gets a thread of its own through
+ * {@link #supplyLongRunning} so it doesn't hold one of the pool's threads.
+ */
+public final class DatabaseExecutor {
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private DatabaseExecutor() {
+    }
+
+    public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, EXECUTOR);
+    }
+
+    public static <T> CompletableFuture<T> supplyLongRunning(String name, Supplier<T> task) {
+        var future = new CompletableFuture<T>();
+        var thread = new Thread(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return future;
+    }
+
+    public static CompletableFuture<Void> run(Runnable task) {
+        return CompletableFuture.runAsync(task, EXECUTOR);
+    }
+
+    public static ExecutorService getExecutor() {
+        return EXECUTOR;
+    }
+
+    public static void shutdown() {
+        EXECUTOR.shutdown();
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            var counter = new AtomicInteger();
+            // More threads than readers would only wait for a connection. Read from the settings, opening the
+            // database here would run its migrations on whichever thread first touches this class
+            var threads = Database.resolveMaxReaders();
+
+            return Executors.newFixedThreadPool(threads, task -> {
+                var thread = new Thread(task, "database-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
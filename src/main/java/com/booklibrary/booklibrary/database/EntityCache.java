@@ -0,0 +1,232 @@
+package com.booklibrary.booklibrary.database;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded identity map for entities loaded by id. While an entity is cached, every lookup of its id returns
+ * the same instance.
+ * <p>
+ * Eviction follows the W-TinyLFU scheme: new entries land in a small LRU window, and when the window
+ * overflows its oldest entry only displaces the LRU victim of the main region if a frequency sketch says it
+ * has been requested more often. Entries also expire a fixed time after they were loaded.
+ */
+public final class EntityCache<K, V> {
+    private static final double WINDOW_RATIO = 0.01;
+
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final long expireAfterWriteNanos;
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    // Bumped by every invalidation, a load that overlapped one may have read the old row
+    private long invalidations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public EntityCache(int maximumSize, long expireAfterWrite, TimeUnit unit) {
+        this.windowCapacity = Math.max(1, (int) (maximumSize * WINDOW_RATIO));
+        this.mainCapacity = Math.max(1, maximumSize - windowCapacity);
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Returns the cached value for the key, or loads it with the loader. The loader runs outside the cache
+     * lock; null results are not cached, nor are results of loads that ran while an entry was invalidated.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long invalidationsBefore;
+        synchronized (this) {
+            invalidationsBefore = invalidations;
+        }
+
+        var cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        var loaded = loader.apply(key);
+        if (loaded == null) {
+            return null;
+        }
+
+        return putIfAbsent(key, loaded, invalidationsBefore);
+    }
+
+    public synchronized V getIfPresent(K key) {
+        sketch.increment(key);
+
+        var entry = window.get(key);
+        if (entry == null) {
+            entry = main.get(key);
+        }
+
+        if (entry == null || isExpired(entry)) {
+            if (entry != null) {
+                window.remove(key);
+                main.remove(key);
+            }
+
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.value;
+    }
+
+    public synchronized void invalidate(K key) {
+        invalidations++;
+        window.remove(key);
+        main.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        window.clear();
+        main.clear();
+    }
+
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        var h = hits.sum();
+        var total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private synchronized V putIfAbsent(K key, V value, long invalidationsBefore) {
+        if (invalidations != invalidationsBefore) {
+            return value;
+        }
+
+        var existing = window.get(key);
+        if (existing == null) {
+            existing = main.get(key);
+        }
+
+        if (existing != null && !isExpired(existing)) {
+            return existing.value;
+        }
+
+        main.remove(key);
+        window.put(key, new Entry<>(value, System.nanoTime()));
+
+        if (window.size() > windowCapacity) {
+            admitFromWindow();
+        }
+
+        return value;
+    }
+
+    // Moves the oldest window entry into the main region if it is requested more often than the main region's victim
+    private void admitFromWindow() {
+        var candidate = window.entrySet().iterator().next();
+        window.remove(candidate.getKey());
+
+        if (main.size() < mainCapacity) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        var victim = main.entrySet().iterator().next();
+        evictions.increment();
+
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+            main.remove(victim.getKey());
+            main.put(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return System.nanoTime() - entry.loadedAt > expireAfterWriteNanos;
+    }
+
+    private record Entry<V>(V value, long loadedAt) {
+    }
+
+    /**
+     * Count-min sketch with four rows of small saturating counters. All counters are halved once the number
+     * of recorded accesses reaches ten times the cache size, so old popularity fades out.
+     */
+    private static final class FrequencySketch {
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final int[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            var width = Integer.highestOneBit(Math.max(16, maximumSize) * 2 - 1);
+            this.rows = new int[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = Math.max(10, maximumSize * 10);
+        }
+
+        void increment(Object key) {
+            var hash = key.hashCode();
+            var added = false;
+
+            for (int i = 0; i < rows.length; i++) {
+                var index = indexOf(hash, i);
+                if (rows[i][index] < MAX_COUNT) {
+                    rows[i][index]++;
+                    added = true;
+                }
+            }
+
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            var hash = key.hashCode();
+            var frequency = MAX_COUNT;
+
+            for (int i = 0; i < rows.length; i++) {
+                frequency = Math.min(frequency, rows[i][indexOf(hash, i)]);
+            }
+
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            var h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & mask;
+        }
+
+        private void reset() {
+            for (var row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+
+            additions /= 2;
+        }
+    }
+}
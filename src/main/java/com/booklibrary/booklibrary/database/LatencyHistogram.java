@@ -0,0 +1,100 @@
+package com.booklibrary.booklibrary.database;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of latencies in microseconds. Values are counted in buckets that grow with the
+ * value and are about 1.5% wide, in the manner of HdrHistogram, so percentiles can be read at any time
+ * without keeping the samples. Recording is a few atomic increments.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 64;
+    // Values above about twelve days are counted as twelve days
+    private static final int MAX_SHIFT = 34;
+    private static final long MAX_VALUE = (2L * SUB_BUCKETS << MAX_SHIFT) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(2 * SUB_BUCKETS + MAX_SHIFT * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long micros) {
+        var value = Math.min(MAX_VALUE, Math.max(0, micros));
+        counts.incrementAndGet(index(value));
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            var n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        count.add(other.count.sum());
+        total.add(other.total.sum());
+        max.accumulate(other.max.get());
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        var n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    public long percentile(double percent) {
+        var n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+
+        var target = Math.max(1, (long) Math.ceil(n * percent / 100));
+        var seen = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(max.get(), lowerBound(i));
+            }
+        }
+
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        var shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+
+        var shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+        return (long) ((index - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+}
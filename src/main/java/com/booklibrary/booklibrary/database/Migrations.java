@@ -0,0 +1,248 @@
+package com.booklibrary.booklibrary.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned schema migrations, applied in order when the database is opened. The version of a database
+ * file is kept in SQLite's {@code user_version} header field; each migration runs in its own transaction
+ * together with the version bump, so a failed migration leaves the file at the previous version.
+ * <p>
+ * Migrations are append-only: once released, a migration is never edited, changes go into a new one.
+ */
+final class Migrations {
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "base schema", statements(
+                    """
+                    CREATE TABLE IF NOT EXISTS authors (
+                        id        INTEGER     NOT NULL CONSTRAINT authors_pk PRIMARY KEY AUTOINCREMENT,
+                        full_name VARCHAR(32) NOT NULL
+                    )""",
+                    """
+                    CREATE TABLE IF NOT EXISTS members (
+                        id        INTEGER NOT NULL CONSTRAINT members_pk PRIMARY KEY AUTOINCREMENT,
+                        full_name VARCHAR(32)
+                    )""",
+                    """
+                    CREATE TABLE IF NOT EXISTS books (
+                        id          INTEGER     NOT NULL CONSTRAINT books_pk PRIMARY KEY AUTOINCREMENT,
+                        title       VARCHAR(32) NOT NULL,
+                        author_id   INTEGER     NOT NULL REFERENCES authors,
+                        genre       VARCHAR(10) NOT NULL,
+                        year        INTEGER     NOT NULL,
+                        reserved_by INTEGER DEFAULT NULL CONSTRAINT books_members_id_fk REFERENCES members
+                    )""",
+                    """
+                    CREATE TABLE IF NOT EXISTS reviews (
+                        id        INTEGER NOT NULL CONSTRAINT reviews_pk PRIMARY KEY AUTOINCREMENT,
+                        member_id INTEGER NOT NULL CONSTRAINT reviews_members_id_fk REFERENCES members
+                            ON UPDATE CASCADE ON DELETE CASCADE,
+                        text      TEXT,
+                        rating    INTEGER,
+                        book_id   INTEGER NOT NULL CONSTRAINT reviews_books_id_fk REFERENCES books
+                            ON UPDATE CASCADE ON DELETE CASCADE
+                    )""",
+                    """
+                    CREATE TABLE IF NOT EXISTS reservation_records (
+                        id          INTEGER   NOT NULL CONSTRAINT reservation_records_pk PRIMARY KEY AUTOINCREMENT,
+                        member_id   INTEGER   NOT NULL CONSTRAINT reservation_records_members_id_fk REFERENCES members,
+                        reserved_at TIMESTAMP NOT NULL,
+                        returned_at TIMESTAMP DEFAULT NULL,
+                        book_id     INTEGER   NOT NULL CONSTRAINT reservation_records_books_id_fk REFERENCES books
+                    )""")),
+            // Left behind by a table rebuild in an old schema editor session
+            new Migration(2, "drop leftover tables", statements("DROP TABLE IF EXISTS books_dg_tmp")),
+            new Migration(3, "change log", ChangeLog::install),
+            new Migration(4, "full-text search", SearchIndex::install),
+            new Migration(5, "lookup indexes", statements(
+                    // Books of an author, and the distinct genres of an author without touching the table
+                    "CREATE INDEX IF NOT EXISTS books_author_id_genre_index ON books (author_id, genre)",
+                    "CREATE INDEX IF NOT EXISTS books_reserved_by_index ON books (reserved_by)",
+                    // Keyset paging of the book table for every sortable column
+                    "CREATE INDEX IF NOT EXISTS books_title_id_index ON books (title, id)",
+                    "CREATE INDEX IF NOT EXISTS books_genre_id_index ON books (genre, id)",
+                    "CREATE INDEX IF NOT EXISTS books_year_id_index ON books (year, id)",
+                    // Covers the per-book average rating
+                    "CREATE INDEX IF NOT EXISTS reviews_book_id_rating_index ON reviews (book_id, rating)",
+                    "CREATE INDEX IF NOT EXISTS reviews_member_id_index ON reviews (member_id)",
+                    "CREATE INDEX IF NOT EXISTS reservation_records_book_id_reserved_at_index ON reservation_records (book_id, reserved_at)",
+                    "CREATE INDEX IF NOT EXISTS reservation_records_member_id_reserved_at_index ON reservation_records (member_id, reserved_at)",
+                    "CREATE INDEX IF NOT EXISTS reservation_records_reserved_at_index ON reservation_records (reserved_at)",
+                    // LIKE is case-insensitive, so only a NOCASE index can serve prefix searches
+                    "CREATE INDEX IF NOT EXISTS members_full_name_index ON members (full_name COLLATE NOCASE)")),
+            new Migration(6, "book rating statistics", statements(
+                    """
+                    CREATE TABLE IF NOT EXISTS book_rating_stats (
+                        book_id      INTEGER NOT NULL PRIMARY KEY REFERENCES books ON DELETE CASCADE,
+                        review_count INTEGER NOT NULL DEFAULT 0,
+                        rating_sum   INTEGER NOT NULL DEFAULT 0,
+                        stars_1      INTEGER NOT NULL DEFAULT 0,
+                        stars_2      INTEGER NOT NULL DEFAULT 0,
+                        stars_3      INTEGER NOT NULL DEFAULT 0,
+                        stars_4      INTEGER NOT NULL DEFAULT 0,
+                        stars_5      INTEGER NOT NULL DEFAULT 0
+                    )""",
+                    """
+                    INSERT OR REPLACE INTO book_rating_stats
+                    SELECT book_id, COUNT(rating), COALESCE(SUM(rating), 0),
+                           COUNT(CASE rating WHEN 1 THEN 1 END), COUNT(CASE rating WHEN 2 THEN 1 END), COUNT(CASE rating WHEN 3 THEN 1 END),
+                           COUNT(CASE rating WHEN 4 THEN 1 END), COUNT(CASE rating WHEN 5 THEN 1 END)
+                    FROM reviews
+                    GROUP BY book_id""")),
+            // Only open reservations are indexed, so the lookup stays small however long the history grows
+            new Migration(7, "active reservation index", statements(
+                    "CREATE INDEX IF NOT EXISTS reservation_records_active_book_id_index ON reservation_records (book_id) WHERE returned_at IS NULL")),
+            // Entries are ordered by book and then id, so a book's newest reviews are read straight off the index
+            new Migration(8, "review paging index", statements(
+                    "CREATE INDEX IF NOT EXISTS reviews_book_id_index ON reviews (book_id)"))
+    );
+
+    // Below this many rows the planner rightly prefers scanning a table over using its index
+    private static final int SMALL_TABLE_ROWS = 1000;
+
+    // Hot lookups that must be served by an index; checked with EXPLAIN QUERY PLAN after migrating
+    private static final List<String> INDEXED_QUERIES = List.of(
+            "SELECT * FROM books WHERE author_id = ?",
+            "SELECT DISTINCT genre FROM books WHERE author_id = ?",
+            "SELECT id FROM books WHERE reserved_by = ?",
+            "SELECT id FROM books WHERE (title, id) > (?, ?) ORDER BY title, id LIMIT 100",
+            "SELECT id FROM books WHERE (genre, id) > (?, ?) ORDER BY genre, id LIMIT 100",
+            "SELECT id FROM books WHERE (year, id) > (?, ?) ORDER BY year, id LIMIT 100",
+            "SELECT * FROM reviews WHERE book_id = ?",
+            "SELECT AVG(rating) FROM reviews WHERE book_id = ?",
+            "SELECT COUNT(*) FROM reviews WHERE member_id = ?",
+            "SELECT * FROM reviews WHERE book_id = ? AND id < ? ORDER BY id DESC LIMIT 50",
+            "SELECT * FROM reservation_records WHERE book_id = ? ORDER BY reserved_at DESC",
+            "SELECT * FROM reservation_records WHERE member_id = ? ORDER BY reserved_at DESC",
+            "SELECT * FROM reservation_records WHERE book_id = ? AND returned_at IS NULL",
+            "SELECT * FROM reservation_records WHERE returned_at IS NULL ORDER BY book_id",
+            "SELECT * FROM reservation_records WHERE returned_at IS NULL AND book_id > ? ORDER BY book_id LIMIT 50",
+            "SELECT * FROM members WHERE full_name LIKE 'a%'"
+    );
+
+    private Migrations() {
+    }
+
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private record Migration(int version, String description, Step step) {
+    }
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    static int currentVersion(Connection connection) throws SQLException {
+        try (var stmt = connection.createStatement(); var rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Applies every migration newer than the version of the database. Returns the number of migrations
+     * that were applied.
+     */
+    static int migrate(Connection connection) throws SQLException {
+        var version = currentVersion(connection);
+        var applied = 0;
+
+        if (version > latestVersion()) {
+            throw new SQLException("Database schema version " + version + " is newer than this application supports (" + latestVersion() + ")");
+        }
+
+        var autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try {
+            for (var migration : MIGRATIONS) {
+                if (migration.version() <= version) {
+                    continue;
+                }
+
+                try {
+                    // Another process may have migrated while this one waited for the write lock
+                    if (currentVersion(connection) >= migration.version()) {
+                        connection.commit();
+                        continue;
+                    }
+
+                    migration.step().apply(connection);
+                    try (var stmt = connection.createStatement()) {
+                        stmt.execute("PRAGMA user_version = " + migration.version());
+                    }
+                    connection.commit();
+                    applied++;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Migration " + migration.version() + " (" + migration.description() + ") failed: " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        if (applied > 0) {
+            // Refresh the planner statistics for the new indexes
+            try (var stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA optimize");
+            }
+        }
+
+        return applied;
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN for the hot lookups and returns a description of every plan that scans a
+     * whole table or sorts into a temporary b-tree. Tables too small for an index to matter are skipped.
+     * An empty list means all of them are served by indexes.
+     */
+    static List<String> verifyQueryPlans(Connection connection) throws SQLException {
+        var problems = new ArrayList<String>();
+
+        for (var query : INDEXED_QUERIES) {
+            try (var stmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + query); var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    var detail = rs.getString("detail");
+
+                    var needsIndex = isFullScan(detail) || detail.contains("USE TEMP B-TREE");
+
+                    if (needsIndex && !isSmall(connection, query)) {
+                        problems.add(query + ": " + detail);
+                    }
+                }
+            }
+        }
+
+        return problems;
+    }
+
+    private static boolean isSmall(Connection connection, String query) throws SQLException {
+        // The lookups read a single table, named right after FROM
+        var table = query.substring(query.indexOf(" FROM ") + 6).split(" ")[0];
+
+        try (var stmt = connection.createStatement();
+             var rs = stmt.executeQuery("SELECT COUNT(*) FROM (SELECT 1 FROM " + table + " LIMIT " + SMALL_TABLE_ROWS + ")")) {
+            return rs.next() && rs.getInt(1) < SMALL_TABLE_ROWS;
+        }
+    }
+
+    // "SCAN books" reads every row, "SCAN books USING INDEX ..." walks an index in order and is fine for paging
+    private static boolean isFullScan(String detail) {
+        return detail.startsWith("SCAN ") && !detail.contains(" USING ");
+    }
+
+    private static Step statements(String... sql) {
+        return connection -> {
+            try (var stmt = connection.createStatement()) {
+                for (var statement : sql) {
+                    stmt.execute(statement);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,265 @@
+package com.booklibrary.booklibrary.database;
+
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory prefix index over the names of one table, used for type-ahead lookups.
+ * <p>
+ * Every word of a name is normalised (lower case, accents stripped) and stored in a sorted map, so all names
+ * with a word starting with some prefix are one range scan away. The index is filled from the database on
+ * first use and afterwards kept up to date by the DAO methods that create and delete rows. The table is read
+ * without holding the index's lock; names put or removed meanwhile are replayed onto the loaded index.
+ */
+public final class NameIndex {
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    // Keys are "<word>\0<id>" so that names sharing a word stay distinct entries
+    private volatile ConcurrentSkipListMap<String, Indexed> words = new ConcurrentSkipListMap<>();
+    private volatile Map<Integer, Indexed> byId = new ConcurrentHashMap<>();
+    private final String loadQuery;
+    private volatile boolean loaded;
+    // Guarded by this: loads reading the table and the changes made while they do, a null name is a removal
+    private int loadsInFlight;
+    private final List<Entry> changesDuringLoad = new ArrayList<>();
+
+    public record Entry(int id, String name) {
+    }
+
+    // An entry with the normalised words of its name, so matching doesn't normalise again
+    private record Indexed(Entry entry, List<String> words) {
+    }
+
+    /**
+     * @param loadQuery query returning the id and the name of every row, in that order
+     */
+    public NameIndex(String loadQuery) {
+        this.loadQuery = loadQuery;
+    }
+
+    /**
+     * Returns up to {@code limit} names that contain, for every word of the text, a word starting with it.
+     * Names starting with the typed words come first, the rest are ordered by their matching word.
+     */
+    public List<Entry> search(String text, int limit) {
+        if (!loaded) {
+            load();
+        }
+
+        var terms = tokenize(text);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        // Scan the range of the longest term, it is the most selective one
+        var scanned = terms.stream().max(Comparator.comparingInt(String::length)).orElseThrow();
+        var range = words.subMap(scanned, true, scanned + Character.MAX_VALUE, true);
+        var matches = new LinkedHashMap<Integer, Indexed>();
+
+        for (var indexed : range.values()) {
+            if (matches.size() >= limit) {
+                break;
+            }
+
+            var id = indexed.entry().id();
+            if (!matches.containsKey(id) && matchesAll(indexed.words(), terms)) {
+                matches.put(id, indexed);
+            }
+        }
+
+        var results = new ArrayList<>(matches.values());
+        results.sort(Comparator.comparing((Indexed indexed) -> !startsWith(indexed.words(), terms)));
+        return results.stream().map(Indexed::entry).toList();
+    }
+
+    public synchronized void put(int id, String name) {
+        if (!loaded) {
+            if (loadsInFlight > 0) {
+                changesDuringLoad.add(new Entry(id, name));
+            }
+            return;
+        }
+
+        remove(id, words, byId);
+        add(new Entry(id, name), words, byId);
+    }
+
+    public synchronized void remove(int id) {
+        if (!loaded) {
+            if (loadsInFlight > 0) {
+                changesDuringLoad.add(new Entry(id, null));
+            }
+            return;
+        }
+
+        remove(id, words, byId);
+    }
+
+    // Drops the index; it is rebuilt from the database on the next search
+    public synchronized void invalidate() {
+        loaded = false;
+        words.clear();
+        byId.clear();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // Fills the index from the database unless it has been loaded already
+    public void load() {
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            loadsInFlight++;
+        }
+
+        // Sorting first and copying once is much cheaper than inserting every word into the skip list
+        var sorted = new TreeMap<String, Indexed>();
+        var ids = new HashMap<Integer, Indexed>();
+
+        try (var connection = Database.getInstance().reader()) {
+            var stmt = connection.prepare(loadQuery);
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    add(new Entry(rs.getInt(1), rs.getString(2)), sorted, ids);
+                }
+            }
+        } catch (SQLException e) {
+            finishLoad();
+            throw new IllegalStateException("Could not load the name index", e);
+        }
+
+        synchronized (this) {
+            if (!loaded) {
+                // Replaying is harmless for changes the query already saw
+                for (var change : changesDuringLoad) {
+                    remove(change.id(), sorted, ids);
+                    if (change.name() != null) {
+                        add(change, sorted, ids);
+                    }
+                }
+
+                words = new ConcurrentSkipListMap<>(sorted);
+                byId = new ConcurrentHashMap<>(ids);
+                loaded = true;
+            }
+            finishLoad();
+        }
+    }
+
+    private synchronized void finishLoad() {
+        if (--loadsInFlight == 0) {
+            changesDuringLoad.clear();
+        }
+    }
+
+    private static void add(Entry entry, Map<String, Indexed> words, Map<Integer, Indexed> ids) {
+        var indexed = new Indexed(entry, tokenize(entry.name()));
+        ids.put(entry.id(), indexed);
+
+        for (var word : indexed.words()) {
+            words.put(word + KEY_SEPARATOR + entry.id(), indexed);
+        }
+    }
+
+    private static void remove(int id, Map<String, Indexed> words, Map<Integer, Indexed> ids) {
+        var indexed = ids.remove(id);
+        if (indexed == null) {
+            return;
+        }
+
+        for (var word : indexed.words()) {
+            words.remove(word + KEY_SEPARATOR + id);
+        }
+    }
+
+    private static boolean matchesAll(List<String> nameWords, List<String> terms) {
+        for (var term : terms) {
+            if (nameWords.stream().noneMatch(word -> word.startsWith(term))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Whether the name starts with the terms in the order they were typed
+    private static boolean startsWith(List<String> nameWords, List<String> terms) {
+        if (terms.size() > nameWords.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < terms.size(); i++) {
+            if (!nameWords.get(i).startsWith(terms.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Splits normalised text into its distinct words; written out by hand as it runs for every name on load
+    private static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+
+        var normalized = normalize(text);
+        var tokens = new ArrayList<String>(4);
+        var start = -1;
+
+        for (int i = 0; i <= normalized.length(); ) {
+            var codePoint = i < normalized.length() ? normalized.codePointAt(i) : ' ';
+            var inWord = Character.isLetterOrDigit(codePoint);
+
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                var word = normalized.substring(start, i);
+                if (!tokens.contains(word)) {
+                    tokens.add(word);
+                }
+                start = -1;
+            }
+
+            i += Character.charCount(codePoint);
+        }
+
+        return tokens;
+    }
+
+    private static String normalize(String text) {
+        if (text.chars().allMatch(c -> c < 0x80)) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+
+        var decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        var stripped = new StringBuilder(decomposed.length());
+
+        for (int i = 0; i < decomposed.length(); i++) {
+            var c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                stripped.append(c);
+            }
+        }
+
+        return stripped.toString().toLowerCase(Locale.ROOT);
+    }
+}
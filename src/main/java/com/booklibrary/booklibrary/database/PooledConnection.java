@@ -0,0 +1,97 @@
+package com.booklibrary.booklibrary.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * A connection leased from {@link Database}. Closing the lease hands the connection back to its pool
+ * instead of closing the underlying JDBC connection.
+ */
+public final class PooledConnection implements AutoCloseable {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final Connection connection;
+    private final Consumer<PooledConnection> release;
+    private final StatementCache statements;
+    private int leases;
+
+    PooledConnection(Connection connection, Consumer<PooledConnection> release) {
+        this.connection = connection;
+        this.release = release;
+        this.statements = new StatementCache(connection);
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns a cached prepared statement for the given SQL with its parameters cleared. The statement
+     * stays owned by this connection, so callers must not close it.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        return statements.get(sql);
+    }
+
+    @FunctionalInterface
+    public interface Transaction<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Runs the work in a transaction on this connection, committing if it completes and rolling back if it
+     * throws. Calls made while a transaction is already open join that transaction.
+     */
+    public <T> T inTransaction(Transaction<T> work) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            return work.run();
+        }
+
+        connection.setAutoCommit(false);
+        try {
+            var result = work.run();
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    boolean isHealthy() {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // The writer lease is reentrant, so a connection can be leased more than once by the same thread
+    void markLeased() {
+        leases++;
+    }
+
+    void closeQuietly() {
+        statements.clear();
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing a pooled connection: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (leases == 0) {
+            return;
+        }
+
+        leases--;
+        release.accept(this);
+    }
+}
@@ -0,0 +1,587 @@
+package com.booklibrary.booklibrary.database;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.FileHandler;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Records how often each query runs, how long it takes, how many rows it returns and which methods run
+ * it. Statements prepared through {@link PooledConnection#prepare(String)} are wrapped in a proxy that
+ * times their executions: a query's time is the time spent in {@code executeQuery} and in the
+ * {@code next} calls that step through its rows. Whatever the caller does between rows isn't counted, so a
+ * slow consumer, like an export writing each row to a file, doesn't make its query look slow.
+ * <p>
+ * Queries are grouped by template, the SQL with whitespace collapsed and placeholder lists shortened.
+ * Walking the stack to find the calling method costs more than the rest of the bookkeeping, so the callers
+ * are only looked up for a random sample of the executions and their call counts are estimates.
+ * Every template is registered as an MXBean under {@code com.booklibrary.booklibrary:type=QueryMetrics},
+ * and a summary is written periodically to a log file. Executions slower than a threshold are also written
+ * to the {@link SlowQueryLog}.
+ * <p>
+ * Settings (system properties):
+ * <ul>
+ *     <li>{@code booklibrary.metrics.enabled}: set to false to turn the metrics off, default true</li>
+ *     <li>{@code booklibrary.metrics.logFile}: summary log file, default {@code logs/query-metrics.log}</li>
+ *     <li>{@code booklibrary.metrics.logIntervalSeconds}: seconds between summaries, 0 for none, default 300</li>
+ * </ul>
+ */
+public final class QueryMetrics {
+    private static final String ENABLED_PROPERTY = "booklibrary.metrics.enabled";
+    private static final String LOG_FILE_PROPERTY = "booklibrary.metrics.logFile";
+    private static final String LOG_INTERVAL_PROPERTY = "booklibrary.metrics.logIntervalSeconds";
+    private static final String DEFAULT_LOG_FILE = "logs/query-metrics.log";
+    private static final long DEFAULT_LOG_INTERVAL_SECONDS = 300;
+    private static final int LOG_FILE_LIMIT_BYTES = 10 * 1024 * 1024;
+    private static final int LOG_FILE_COUNT = 5;
+    private static final int MAX_CALL_SITES = 32;
+    // One in this many executions is attributed to its calling method
+    private static final int CALL_SITE_SAMPLING = 16;
+    private static final String OBJECT_DOMAIN = "com.booklibrary.booklibrary";
+    private static final String PACKAGE_PREFIX = "com.booklibrary.booklibrary.";
+    private static final String DATABASE_PACKAGE_PREFIX = QueryMetrics.class.getPackageName() + ".";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+    private static final Logger LOGGER = Logger.getLogger("com.booklibrary.booklibrary.queries");
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private static final boolean enabled = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    // Raw SQL to template, the raw texts are bounded by the statement caches
+    private static final Map<String, Template> bySql = new ConcurrentHashMap<>();
+    private static final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private static final AtomicInteger templateNumbers = new AtomicInteger();
+
+    static {
+        if (enabled) {
+            registerMBean(OBJECT_DOMAIN + ":type=QueryMetrics", new Registry());
+            scheduleSummaries();
+        }
+    }
+
+    private QueryMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Wraps a freshly prepared statement so its executions are recorded
+    static PreparedStatement instrument(String sql, PreparedStatement stmt) {
+        if (!enabled) {
+            return stmt;
+        }
+
+        var template = bySql.computeIfAbsent(sql, raw -> templates.computeIfAbsent(normalize(raw), Template::new));
+        return (PreparedStatement) Proxy.newProxyInstance(QueryMetrics.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new StatementHandler(stmt, sql, template));
+    }
+
+    /**
+     * Returns the recorded templates, the ones that took the most time in total first.
+     */
+    public static List<TemplateMXBean> getTemplates() {
+        return templates.values().stream()
+                .sorted(Comparator.comparingLong(Template::totalMicros).reversed())
+                .map(TemplateMXBean.class::cast)
+                .toList();
+    }
+
+    public static void reset() {
+        templates.values().forEach(Template::reset);
+    }
+
+    // One line per template that ran, slowest in total first
+    public static String summary() {
+        var summary = new StringBuilder(String.format("%8s %6s %10s %9s %9s %9s %9s %9s %10s  %s%n",
+                "calls", "errors", "total ms", "mean us", "p50 us", "p95 us", "p99 us", "max us", "rows", "query"));
+
+        for (var template : getTemplates()) {
+            if (template.getCalls() == 0 && template.getErrors() == 0) {
+                continue;
+            }
+
+            summary.append(String.format("%8d %6d %10d %9d %9d %9d %9d %9d %10d  %s%n", template.getCalls(), template.getErrors(),
+                    template.getTotalMillis(), template.getMeanMicros(), template.getP50Micros(), template.getP95Micros(),
+                    template.getP99Micros(), template.getMaxMicros(), template.getRows(), template.getSql()));
+
+            for (var site : template.getCallSites().entrySet()) {
+                summary.append(String.format("%8s %6s %10s %9s %9s %9s %9s %9s %10s    from %s%n", "~" + site.getValue(),
+                        "", "", "", "", "", "", "", "", site.getKey()));
+            }
+        }
+
+        return summary.toString();
+    }
+
+    static String normalize(String sql) {
+        var collapsed = WHITESPACE.matcher(sql.strip()).replaceAll(" ");
+        return PLACEHOLDER_LIST.matcher(collapsed).replaceAll("?, ...");
+    }
+
+    // The first application method up the stack that is not part of the database layer
+    private static String callSite() {
+        return STACK_WALKER.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith(PACKAGE_PREFIX) && !frame.getClassName().startsWith(DATABASE_PACKAGE_PREFIX))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName()) + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+                .orElse("database"));
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static void registerMBean(String name, Object bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+        } catch (JMException e) {
+            System.err.println("Error registering " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static void scheduleSummaries() {
+        var interval = Long.getLong(LOG_INTERVAL_PROPERTY, DEFAULT_LOG_INTERVAL_SECONDS);
+        if (interval <= 0) {
+            return;
+        }
+
+        if (!logToFile(LOGGER, System.getProperty(LOG_FILE_PROPERTY, DEFAULT_LOG_FILE))) {
+            return;
+        }
+
+        var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "query-metrics-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> LOGGER.info("Query metrics since start:\n" + summary()), interval, interval, TimeUnit.SECONDS);
+    }
+
+    // Sends the logger's records to a rotating file instead of the console
+    public static boolean logToFile(Logger logger, String fileName) {
+        try {
+            var file = Path.of(fileName).toAbsolutePath();
+            Files.createDirectories(file.getParent());
+
+            var handler = new FileHandler(file.toString(), LOG_FILE_LIMIT_BYTES, LOG_FILE_COUNT, true);
+            handler.setFormatter(new SimpleFormatter());
+            logger.addHandler(handler);
+            logger.setUseParentHandlers(false);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error opening the log file " + fileName + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Statistics of one query template, as seen over JMX.
+     */
+    public interface TemplateMXBean {
+        String getSql();
+
+        long getCalls();
+
+        long getErrors();
+
+        long getRows();
+
+        long getTotalMillis();
+
+        long getMeanMicros();
+
+        long getP50Micros();
+
+        long getP95Micros();
+
+        long getP99Micros();
+
+        long getMaxMicros();
+
+        // Estimated call counts per calling method
+        Map<String, Long> getCallSites();
+
+        void reset();
+    }
+
+    /**
+     * The whole registry, as seen over JMX.
+     */
+    public interface RegistryMXBean {
+        int getTemplateCount();
+
+        String getSummary();
+
+        void reset();
+    }
+
+    private static final class Registry implements RegistryMXBean {
+        @Override
+        public int getTemplateCount() {
+            return templates.size();
+        }
+
+        @Override
+        public String getSummary() {
+            return summary();
+        }
+
+        @Override
+        public void reset() {
+            QueryMetrics.reset();
+        }
+    }
+
+    private static final class Template implements TemplateMXBean {
+        private final String sql;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final Map<String, LongAdder> callSites = new ConcurrentHashMap<>();
+
+        Template(String sql) {
+            this.sql = sql;
+
+            var name = String.format("%03d %s", templateNumbers.incrementAndGet(), sql.length() > 80 ? sql.substring(0, 80) + "..." : sql);
+            registerMBean(OBJECT_DOMAIN + ":type=QueryMetrics,template=" + ObjectName.quote(name), this);
+        }
+
+        void record(CallSite callSite, long micros, long rowCount) {
+            latency.record(micros);
+            rows.add(rowCount);
+            if (callSite != null) {
+                callSite(callSite.site()).add(callSite.weight());
+            }
+        }
+
+        /**
+         * Looks up the caller for a random sample of the executions, each standing for as many calls as it
+         * was sampled out of. The first execution is always looked up, so every template shows at least one
+         * caller, and counts once.
+         */
+        CallSite sampleCallSite() {
+            if (callSites.isEmpty()) {
+                return new CallSite(QueryMetrics.callSite(), 1);
+            }
+            if (ThreadLocalRandom.current().nextInt(CALL_SITE_SAMPLING) == 0) {
+                return new CallSite(QueryMetrics.callSite(), CALL_SITE_SAMPLING);
+            }
+            return null;
+        }
+
+        void recordError() {
+            errors.increment();
+        }
+
+        long totalMicros() {
+            return Math.round(latency.mean() * latency.count());
+        }
+
+        private LongAdder callSite(String site) {
+            var counter = callSites.get(site);
+            if (counter != null) {
+                return counter;
+            }
+
+            // Keeps the map small when a template is run from many places
+            return callSites.computeIfAbsent(callSites.size() < MAX_CALL_SITES ? site : "other", key -> new LongAdder());
+        }
+
+        @Override
+        public String getSql() {
+            return sql;
+        }
+
+        @Override
+        public long getCalls() {
+            return latency.count();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getRows() {
+            return rows.sum();
+        }
+
+        @Override
+        public long getTotalMillis() {
+            return totalMicros() / 1000;
+        }
+
+        @Override
+        public long getMeanMicros() {
+            return Math.round(latency.mean());
+        }
+
+        @Override
+        public long getP50Micros() {
+            return latency.percentile(50);
+        }
+
+        @Override
+        public long getP95Micros() {
+            return latency.percentile(95);
+        }
+
+        @Override
+        public long getP99Micros() {
+            return latency.percentile(99);
+        }
+
+        @Override
+        public long getMaxMicros() {
+            return latency.max();
+        }
+
+        @Override
+        public Map<String, Long> getCallSites() {
+            var sites = new LinkedHashMap<String, Long>();
+            callSites.entrySet().stream()
+                    .sorted(Map.Entry.<String, LongAdder>comparingByValue(Comparator.comparingLong(LongAdder::sum)).reversed())
+                    .forEach(entry -> sites.put(entry.getKey(), entry.getValue().sum()));
+            return sites;
+        }
+
+        @Override
+        public void reset() {
+            latency.reset();
+            errors.reset();
+            rows.reset();
+            callSites.clear();
+        }
+    }
+
+    // A sampled caller of a template and the number of calls it stands for
+    private record CallSite(String site, int weight) {
+    }
+
+    // One run of a statement, open until its result set has been read
+    private static final class Execution {
+        private final StatementHandler statement;
+        private final CallSite callSite;
+        private final Object[] parameters;
+        // Time spent inside the driver, executing and stepping, not between the caller's next calls
+        private long nanos;
+        private long rows;
+        private boolean finished;
+
+        Execution(StatementHandler statement, CallSite callSite, Object[] parameters) {
+            this.statement = statement;
+            this.callSite = callSite;
+            this.parameters = parameters;
+        }
+
+        void finish() {
+            if (finished) {
+                return;
+            }
+
+            finished = true;
+            var micros = nanos / 1000;
+            statement.template.record(callSite, micros, rows);
+
+            if (SlowQueryLog.isSlow(micros)) {
+                // The statement is still open and its connection still leased, so the plan can be taken on it
+                SlowQueryLog.log(statement.target, statement.sql, parameters, micros, rows,
+                        callSite != null ? callSite.site() : callSite());
+            }
+        }
+    }
+
+    /*
+     * A statement is only used by the thread that leased its connection, so the handlers need no locking.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final PreparedStatement target;
+        private final String sql;
+        private final Template template;
+        // Bound values by parameter index, kept for the slow query log
+        private Object[] parameters = new Object[0];
+        private int bound;
+        private Execution open;
+
+        StatementHandler(PreparedStatement target, String sql, Template template) {
+            this.target = target;
+            this.sql = sql;
+            this.template = template;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getParameterCount() > 0) {
+                if (SlowQueryLog.isEnabled() && args.length >= 2 && args[0] instanceof Integer index && method.getName().startsWith("set")) {
+                    bind(index, method.getName().equals("setNull") ? null : args[1]);
+                }
+                return delegate(target, method, args);
+            }
+
+            return switch (method.getName()) {
+                case "executeQuery" -> executeQuery(method);
+                case "executeUpdate", "executeLargeUpdate", "executeBatch", "execute" -> execute(method);
+                case "clearParameters" -> {
+                    Arrays.fill(parameters, null);
+                    bound = 0;
+                    yield delegate(target, method, args);
+                }
+                case "close" -> {
+                    finishOpen();
+                    yield delegate(target, method, args);
+                }
+                default -> delegate(target, method, args);
+            };
+        }
+
+        private void bind(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (index > parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index, 2 * parameters.length));
+            }
+            parameters[index - 1] = value;
+            bound = Math.max(bound, index);
+        }
+
+        private Execution begin() {
+            // Running the statement again closes the previous result set, which may not have been read out
+            finishOpen();
+
+            var values = SlowQueryLog.isEnabled() ? Arrays.copyOf(parameters, bound) : null;
+            return new Execution(this, template.sampleCallSite(), values);
+        }
+
+        private Object executeQuery(Method method) throws Throwable {
+            var execution = begin();
+            ResultSet resultSet;
+            var start = System.nanoTime();
+            try {
+                resultSet = (ResultSet) delegate(target, method, null);
+            } catch (SQLException | RuntimeException e) {
+                template.recordError();
+                throw e;
+            } finally {
+                execution.nanos += System.nanoTime() - start;
+            }
+
+            open = execution;
+            return Proxy.newProxyInstance(QueryMetrics.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    new ResultSetHandler(resultSet, open));
+        }
+
+        private Object execute(Method method) throws Throwable {
+            var execution = begin();
+            Object result;
+            var start = System.nanoTime();
+            try {
+                result = delegate(target, method, null);
+            } catch (SQLException | RuntimeException e) {
+                template.recordError();
+                throw e;
+            } finally {
+                execution.nanos += System.nanoTime() - start;
+            }
+
+            execution.rows = affectedRows(result);
+            execution.finish();
+            return result;
+        }
+
+        private void finishOpen() {
+            if (open != null) {
+                open.finish();
+                open = null;
+            }
+        }
+
+        private static long affectedRows(Object result) {
+            if (result instanceof Number count) {
+                return Math.max(0, count.longValue());
+            }
+
+            var rows = 0L;
+            if (result instanceof int[] counts) {
+                for (var count : counts) {
+                    rows += Math.max(0, count);
+                }
+            }
+            return rows;
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final Execution execution;
+
+        ResultSetHandler(ResultSet target, Execution execution) {
+            this.target = target;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getParameterCount() == 0) {
+                switch (method.getName()) {
+                    case "next" -> {
+                        var start = System.nanoTime();
+                        boolean hasRow;
+                        try {
+                            hasRow = (Boolean) delegate(target, method, null);
+                        } finally {
+                            execution.nanos += System.nanoTime() - start;
+                        }
+
+                        if (hasRow) {
+                            execution.rows++;
+                        } else {
+                            execution.finish();
+                        }
+                        return hasRow;
+                    }
+                    case "close" -> execution.finish();
+                    default -> {
+                    }
+                }
+            }
+
+            return delegate(target, method, args);
+        }
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.booklibrary.booklibrary.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * FTS5 index over book title, genre and author name. The index is contentless (it only stores tokens, rows
+ * are read back from books by rowid) and is kept in sync by triggers on books and authors.
+ */
+public final class SearchIndex {
+    // Column weights for bm25 ranking: title, genre, author name
+    public static final String RANK = "bm25(books_fts, 10.0, 2.0, 5.0)";
+
+    private static final String CREATE_TABLE = """
+            CREATE VIRTUAL TABLE books_fts USING fts5(
+                title, genre, author_name,
+                content = '', contentless_delete = 1,
+                tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3'
+            )""";
+
+    private static final String REBUILD = """
+            INSERT INTO books_fts (rowid, title, genre, author_name)
+            SELECT b.id, b.title, b.genre, a.full_name FROM books b LEFT JOIN authors a ON a.id = b.author_id""";
+
+    private static final String[] TRIGGERS = {
+            """
+            CREATE TRIGGER IF NOT EXISTS books_fts_books_insert AFTER INSERT ON books BEGIN
+                INSERT INTO books_fts (rowid, title, genre, author_name)
+                VALUES (NEW.id, NEW.title, NEW.genre, (SELECT full_name FROM authors WHERE id = NEW.author_id));
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS books_fts_books_update AFTER UPDATE OF title, genre, author_id ON books BEGIN
+                DELETE FROM books_fts WHERE rowid = OLD.id;
+                INSERT INTO books_fts (rowid, title, genre, author_name)
+                VALUES (NEW.id, NEW.title, NEW.genre, (SELECT full_name FROM authors WHERE id = NEW.author_id));
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS books_fts_books_delete AFTER DELETE ON books BEGIN
+                DELETE FROM books_fts WHERE rowid = OLD.id;
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS books_fts_authors_update AFTER UPDATE OF full_name ON authors BEGIN
+                DELETE FROM books_fts WHERE rowid IN (SELECT id FROM books WHERE author_id = NEW.id);
+                INSERT INTO books_fts (rowid, title, genre, author_name)
+                SELECT id, title, genre, NEW.full_name FROM books WHERE author_id = NEW.id;
+            END""",
+            """
+            CREATE TRIGGER IF NOT EXISTS books_fts_authors_delete AFTER DELETE ON authors BEGIN
+                DELETE FROM books_fts WHERE rowid IN (SELECT id FROM books WHERE author_id = OLD.id);
+                INSERT INTO books_fts (rowid, title, genre, author_name)
+                SELECT id, title, genre, NULL FROM books WHERE author_id = OLD.id;
+            END"""
+    };
+
+    private SearchIndex() {
+    }
+
+    // Creates the index and its triggers, filling the index from the existing catalog the first time
+    static void install(Connection connection) throws SQLException {
+        try (var stmt = connection.createStatement()) {
+            boolean exists;
+            try (var rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'books_fts'")) {
+                exists = rs.next();
+            }
+
+            if (!exists) {
+                stmt.execute(CREATE_TABLE);
+                stmt.execute(REBUILD);
+            }
+
+            for (var sql : TRIGGERS) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Turns free text typed by a user into an FTS5 query: every word becomes a quoted prefix term and all
+     * terms must match. Returns null if the text has no searchable words.
+     */
+    public static String toMatchQuery(String text) {
+        var terms = new ArrayList<String>();
+
+        for (var word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                terms.add("\"" + word + "\"*");
+            }
+        }
+
+        return terms.isEmpty() ? null : String.join(" ", terms);
+    }
+}
@@ -0,0 +1,150 @@
+package com.booklibrary.booklibrary.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Writes the statements that take longer than a threshold to a rotating log file, together with their
+ * bound parameters and query plan. Plan steps that scan a whole table or sort through a temporary b-tree
+ * are flagged, as they are the usual cause of a query that is only slow on a large database. Statements
+ * are timed by {@link QueryMetrics}, so the log is off when the metrics are.
+ * <p>
+ * Settings (system properties):
+ * <ul>
+ *     <li>{@code booklibrary.db.slowQueryMillis}: threshold in milliseconds, 0 to turn the log off, default 100</li>
+ *     <li>{@code booklibrary.db.slowQueryLog}: log file, default {@code logs/slow-queries.log}</li>
+ * </ul>
+ */
+final class SlowQueryLog {
+    private static final String THRESHOLD_PROPERTY = "booklibrary.db.slowQueryMillis";
+    private static final String LOG_FILE_PROPERTY = "booklibrary.db.slowQueryLog";
+    private static final long DEFAULT_THRESHOLD_MILLIS = 100;
+    private static final String DEFAULT_LOG_FILE = "logs/slow-queries.log";
+    // A plan is taken again after this long, in case the schema or the statistics changed
+    private static final long PLAN_TTL_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int MAX_PARAMETER_LENGTH = 200;
+
+    private static final Logger LOGGER = Logger.getLogger("com.booklibrary.booklibrary.slowqueries");
+
+    private static final long thresholdMicros = Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD_MILLIS) * 1000;
+    private static final boolean enabled = thresholdMicros > 0
+            && QueryMetrics.logToFile(LOGGER, System.getProperty(LOG_FILE_PROPERTY, DEFAULT_LOG_FILE));
+    private static final Map<String, Plan> plans = new ConcurrentHashMap<>();
+
+    private record Plan(String text, long takenAt) {
+    }
+
+    private SlowQueryLog() {
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static boolean isSlow(long micros) {
+        return enabled && micros >= thresholdMicros;
+    }
+
+    static void log(PreparedStatement stmt, String sql, Object[] parameters, long micros, long rows, String callSite) {
+        var entry = new StringBuilder()
+                .append(String.format("Slow query: %.1f ms, %d rows, from %s%n", micros / 1000.0, rows, callSite))
+                .append("SQL: ").append(sql.strip()).append(System.lineSeparator())
+                .append("Parameters: ").append(describe(parameters)).append(System.lineSeparator())
+                .append("Plan:").append(System.lineSeparator())
+                .append(plan(stmt, sql, parameters));
+
+        LOGGER.warning(entry.toString());
+    }
+
+    private static String plan(PreparedStatement stmt, String sql, Object[] parameters) {
+        var cached = plans.get(sql);
+        if (cached != null && System.nanoTime() - cached.takenAt() < PLAN_TTL_NANOS) {
+            return cached.text();
+        }
+
+        String text;
+        try {
+            text = explain(stmt, sql, parameters);
+        } catch (SQLException e) {
+            // Not cached, the next slow run tries again
+            return "  (plan not available: " + e.getMessage() + ")" + System.lineSeparator();
+        }
+
+        plans.put(sql, new Plan(text, System.nanoTime()));
+        return text;
+    }
+
+    // Runs EXPLAIN QUERY PLAN on the statement's own connection, with the same parameters
+    private static String explain(PreparedStatement stmt, String sql, Object[] parameters) throws SQLException {
+        var plan = new StringBuilder();
+        var depths = new HashMap<Integer, Integer>();
+
+        try (var explain = stmt.getConnection().prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            if (parameters != null) {
+                for (int i = 0; i < parameters.length; i++) {
+                    explain.setObject(i + 1, parameters[i]);
+                }
+            }
+
+            try (var rs = explain.executeQuery()) {
+                while (rs.next()) {
+                    var depth = depths.getOrDefault(rs.getInt("parent"), 0) + 1;
+                    depths.put(rs.getInt("id"), depth);
+
+                    var detail = rs.getString("detail");
+                    plan.append("  ".repeat(depth)).append(detail).append(flag(detail)).append(System.lineSeparator());
+                }
+            }
+        }
+
+        return plan.toString();
+    }
+
+    private static String flag(String detail) {
+        if (detail.startsWith("SCAN ") && !detail.contains("VIRTUAL TABLE") && !detail.equals("SCAN CONSTANT ROW")) {
+            return "    <-- full scan";
+        }
+        if (detail.contains("TEMP B-TREE")) {
+            return "    <-- temp b-tree";
+        }
+        return "";
+    }
+
+    private static String describe(Object[] parameters) {
+        if (parameters == null || parameters.length == 0) {
+            return "none";
+        }
+
+        var text = new StringBuilder("[");
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(i + 1).append('=').append(describe(parameters[i]));
+        }
+        return text.append(']').toString();
+    }
+
+    private static String describe(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof byte[] bytes) {
+            return "<" + bytes.length + " bytes>";
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+
+        var text = value.toString();
+        if (text.length() > MAX_PARAMETER_LENGTH) {
+            text = text.substring(0, MAX_PARAMETER_LENGTH) + "...";
+        }
+        return "'" + text.replace("'", "''") + "'";
+    }
+}
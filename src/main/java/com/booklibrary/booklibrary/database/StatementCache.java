@@ -0,0 +1,88 @@
+package com.booklibrary.booklibrary.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-connection LRU cache of prepared statements keyed by SQL text. Cached statements are owned by the
+ * cache: callers close their result sets but never the statements themselves.
+ */
+public final class StatementCache {
+    private static final String SIZE_PROPERTY = "booklibrary.db.statementCacheSize";
+    private static final int DEFAULT_SIZE = 64;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+
+    StatementCache(Connection connection) {
+        this.connection = connection;
+
+        var capacity = Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE);
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+
+                evictions.increment();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement get(String sql) throws SQLException {
+        var stmt = statements.get(sql);
+
+        if (stmt != null && !stmt.isClosed()) {
+            hits.increment();
+            stmt.clearParameters();
+            return stmt;
+        }
+
+        misses.increment();
+        stmt = QueryMetrics.instrument(sql, connection.prepareStatement(sql));
+        statements.put(sql, stmt);
+        return stmt;
+    }
+
+    void clear() {
+        statements.values().forEach(StatementCache::closeQuietly);
+        statements.clear();
+    }
+
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    public static long getMissCount() {
+        return misses.sum();
+    }
+
+    public static long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public static double getHitRate() {
+        var h = hits.sum();
+        var total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing a cached statement: " + e.getMessage());
+        }
+    }
+}
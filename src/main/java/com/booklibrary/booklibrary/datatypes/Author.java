@@ -1,38 +1,89 @@
 package com.booklibrary.booklibrary.datatypes;
 
 import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.database.PooledConnection;
+import com.booklibrary.booklibrary.database.EntityCache;
+import com.booklibrary.booklibrary.database.NameIndex;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.beans.value.ObservableValue;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.booklibrary.booklibrary.utils.Utils.showError;
 
 public class Author {
+    private static final EntityCache<Integer, Author> CACHE = new EntityCache<>(10_000, 10, TimeUnit.MINUTES);
+    private static final NameIndex NAMES = new NameIndex("SELECT id, full_name FROM authors");
+    private static final String GENRE_SEPARATOR = "\u001F";
+    private static final String STATISTICS_QUERY = """
+            SELECT a.id, a.full_name, COUNT(b.id) AS book_count, g.genres, r.average_rating
+            FROM authors a
+            LEFT JOIN books b ON b.author_id = a.id
+            LEFT JOIN (SELECT author_id, GROUP_CONCAT(genre, char(31)) AS genres
+                       FROM (SELECT DISTINCT author_id, genre FROM books)
+                       GROUP BY author_id) g ON g.author_id = a.id
+            LEFT JOIN (SELECT bk.author_id, CAST(SUM(st.rating_sum) AS REAL) / SUM(st.review_count) AS average_rating
+                       FROM book_rating_stats st
+                       JOIN books bk ON bk.id = st.book_id
+                       GROUP BY bk.author_id) r ON r.author_id = a.id
+            """;
+    private static final String STATISTICS_GROUPING = "GROUP BY a.id";
+    // Same columns for a few authors; the aggregates are correlated so only their books are read
+    private static final String STATISTICS_BY_ID_QUERY = """
+            SELECT a.id, a.full_name,
+                   (SELECT COUNT(*) FROM books b WHERE b.author_id = a.id) AS book_count,
+                   (SELECT GROUP_CONCAT(genre, char(31))
+                    FROM (SELECT DISTINCT b.genre FROM books b WHERE b.author_id = a.id)) AS genres,
+                   (SELECT CAST(SUM(st.rating_sum) AS REAL) / SUM(st.review_count)
+                    FROM books b
+                    JOIN book_rating_stats st ON st.book_id = b.id
+                    WHERE b.author_id = a.id) AS average_rating
+            FROM authors a
+            """;
+
     private final IntegerProperty idProperty;
     private final StringProperty fullNameProperty;
 
+    // Precomputed by the statistics loader, lazily resolved otherwise
+    private IntegerProperty bookCountProperty;
+    private IntegerProperty averageRatingProperty;
+    private List<String> genres;
+
     private Author(int id, String fullName) {
         this.idProperty = new SimpleIntegerProperty(id);
         this.fullNameProperty = new SimpleStringProperty(fullName);
     }
 
     public static Author getById(int id) {
-        var connection = Database.getInstance().getConnection();
+        return CACHE.get(id, Author::loadById);
+    }
+
+    public static EntityCache<Integer, Author> getCache() {
+        return CACHE;
+    }
+
+    private static Author loadById(int id) {
         var query = "SELECT * FROM authors WHERE id = ?";
 
-        try {
-            var stmt = connection.prepareStatement(query);
+        try (var connection = Database.getInstance().reader()) {
+            var stmt = connection.prepare(query);
             stmt.setInt(1, id);
 
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return new Author(rs.getInt("id"), rs.getString("full_name"));
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Author(rs.getInt("id"), rs.getString("full_name"));
+                }
             }
         } catch (SQLException e) {
             showError("An error occurred while fetching author by id [Author class]");
@@ -42,41 +93,156 @@ public class Author {
         return null;
     }
 
-    public static void create(String fullName) {
-        var connection = Database.getInstance().getConnection();
+    // Returns the id of the new author, or -1 if it could not be created
+    public static int create(String fullName) {
         var query = "INSERT INTO authors (full_name) VALUES (?)";
+        var id = -1;
 
-        try {
-            var stmt = connection.prepareStatement(query);
+        try (var connection = Database.getInstance().writer()) {
+            var stmt = connection.prepare(query);
             stmt.setString(1, fullName);
 
             stmt.executeUpdate();
+            try (var keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    id = keys.getInt(1);
+                }
+            }
         } catch (SQLException e) {
             showError("An error occurred while creating author [Author class]");
             e.printStackTrace();
         }
+
+        // Once the writer is released, so other writers don't wait on the name index
+        if (id >= 0) {
+            NAMES.put(id, fullName);
+        }
+        return id;
     }
 
     public static List<Author> getAuthors() {
-        var connection = Database.getInstance().getConnection();
         var query = "SELECT * FROM authors";
         var authors = new ArrayList<Author>();
 
-        try {
-            var stmt = connection.prepareStatement(query);
-            var rs = stmt.executeQuery();
+        try (var connection = Database.getInstance().reader()) {
+            var stmt = connection.prepare(query);
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    authors.add(new Author(rs.getInt("id"), rs.getString("full_name")));
+                }
+            }
+        } catch (SQLException e) {
+            showError("An error occurred while fetching authors [Author class]");
+            e.printStackTrace();
+        }
+
+        return authors;
+    }
+
+    // One page of authors in id order, continuing after the given id
+    public static List<Author> getPage(PooledConnection connection, int afterId, int limit) throws SQLException {
+        var query = "SELECT * FROM authors WHERE id > ? ORDER BY id LIMIT ?";
+        var authors = new ArrayList<Author>();
+
+        var stmt = connection.prepare(query);
+        stmt.setInt(1, afterId);
+        stmt.setInt(2, limit);
 
+        try (var rs = stmt.executeQuery()) {
             while (rs.next()) {
                 authors.add(new Author(rs.getInt("id"), rs.getString("full_name")));
             }
+        }
+
+        return authors;
+    }
+
+    // Type-ahead lookup by name, served from memory once the name index has been loaded
+    public static List<Author> searchByName(String text, int limit) {
+        return NAMES.search(text, limit).stream()
+                .map(entry -> new Author(entry.id(), entry.name()))
+                .toList();
+    }
+
+    public static CompletableFuture<List<Author>> searchByNameAsync(String text, int limit) {
+        return DatabaseExecutor.supply(() -> searchByName(text, limit));
+    }
+
+    public static NameIndex getNameIndex() {
+        return NAMES;
+    }
+
+    public static CompletableFuture<List<Author>> getAuthorsAsync() {
+        return DatabaseExecutor.supply(Author::getAuthors);
+    }
+
+    public static CompletableFuture<List<Author>> getAuthorsWithStatisticsAsync() {
+        return DatabaseExecutor.supply(Author::getAuthorsWithStatistics);
+    }
+
+    // Loads every author with book count, average rating and genres in a single aggregated pass
+    public static List<Author> getAuthorsWithStatistics() {
+        var authors = new ArrayList<Author>();
+
+        try (var connection = Database.getInstance().reader()) {
+            var stmt = connection.prepare(STATISTICS_QUERY + STATISTICS_GROUPING);
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    authors.add(fromStatisticsRow(rs));
+                }
+            }
         } catch (SQLException e) {
-            showError("An error occurred while fetching authors [Author class]");
+            showError("An error occurred while fetching author statistics [Author class]");
+            e.printStackTrace();
+        }
+
+        return authors;
+    }
+
+    public static List<Author> getAuthorsWithStatistics(Collection<Integer> ids) {
+        try (var connection = Database.getInstance().reader()) {
+            return getAuthorsWithStatistics(connection, ids);
+        } catch (SQLException e) {
+            showError("An error occurred while fetching author statistics by id [Author class]");
             e.printStackTrace();
         }
 
+        return new ArrayList<>();
+    }
+
+    public static List<Author> getAuthorsWithStatistics(PooledConnection connection, Collection<Integer> ids) throws SQLException {
+        var authors = new ArrayList<Author>();
+
+        for (var chunk : Queries.chunks(ids)) {
+            var query = STATISTICS_BY_ID_QUERY + "WHERE a.id IN (" + Queries.placeholders(chunk.size()) + ")";
+            var stmt = connection.prepare(query);
+            for (int i = 0; i < chunk.size(); i++) {
+                stmt.setInt(i + 1, chunk.get(i));
+            }
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    authors.add(fromStatisticsRow(rs));
+                }
+            }
+        }
+
         return authors;
     }
 
+    private static Author fromStatisticsRow(ResultSet rs) throws SQLException {
+        var author = new Author(rs.getInt("id"), rs.getString("full_name"));
+        var genres = rs.getString("genres");
+
+        author.bookCountProperty = new SimpleIntegerProperty(rs.getInt("book_count"));
+        author.averageRatingProperty = new SimpleIntegerProperty(rs.getInt("average_rating"));
+        author.genres = genres != null ? Arrays.asList(genres.split(GENRE_SEPARATOR)) : List.of();
+
+        return author;
+    }
+
     public IntegerProperty getIdProperty() {
         return idProperty;
     }
@@ -85,46 +251,74 @@ public class Author {
         return fullNameProperty;
     }
 
-    public void delete() {
-        var connection = Database.getInstance().getConnection();
+    public IntegerProperty getBookCountProperty() {
+        if (bookCountProperty == null) {
+            var books = Book.getByAuthor(idProperty.get());
+            bookCountProperty = new SimpleIntegerProperty(books != null ? books.size() : 0);
+        }
 
-        // Delete books
-        try {
-            var query = "DELETE FROM books WHERE author_id = ?";
-            var stmt = connection.prepareStatement(query);
-            stmt.setInt(1, idProperty.get());
+        return bookCountProperty;
+    }
 
-            stmt.executeUpdate();
+    public IntegerProperty getAverageRatingProperty() {
+        if (averageRatingProperty == null) {
+            averageRatingProperty = new SimpleIntegerProperty(getAverageRating());
+        }
+
+        return averageRatingProperty;
+    }
+
+    public void delete() {
+        // Delete books
+        try (var connection = Database.getInstance().writer()) {
+            connection.inTransaction(() -> {
+                BookRatingStats.deleteForAuthor(connection, idProperty.get());
+
+                var query = "DELETE FROM books WHERE author_id = ?";
+                var stmt = connection.prepare(query);
+                stmt.setInt(1, idProperty.get());
+                return stmt.executeUpdate();
+            });
         } catch (SQLException e) {
             showError("An error occurred while deleting books by author [Author class]");
             e.printStackTrace();
         }
 
         // Delete author
-        try {
+        try (var connection = Database.getInstance().writer()) {
             var query = "DELETE FROM authors WHERE id = ?";
-            var stmt = connection.prepareStatement(query);
+            var stmt = connection.prepare(query);
             stmt.setInt(1, idProperty.get());
 
             stmt.executeUpdate();
+
+            // Only once the row is gone, a reader could otherwise load it back into the cache in between
+            CACHE.invalidate(idProperty.get());
         } catch (SQLException e) {
             showError("An error occurred while deleting author [Author class]");
             e.printStackTrace();
+            return;
         }
+
+        NAMES.remove(idProperty.get());
     }
 
     public List<String> getGenres() {
-        var connection = Database.getInstance().getConnection();
+        if (genres != null) {
+            return genres;
+        }
+
         var query = "SELECT DISTINCT genre FROM books WHERE author_id = ?";
         var genres = new ArrayList<String>();
 
-        try {
-            var stmt = connection.prepareStatement(query);
+        try (var connection = Database.getInstance().reader()) {
+            var stmt = connection.prepare(query);
             stmt.setInt(1, idProperty.get());
 
-            var rs = stmt.executeQuery();
-            while (rs.next()) {
-                genres.add(rs.getString("genre"));
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    genres.add(rs.getString("genre"));
+                }
             }
         } catch (SQLException e) {
             showError("An error occurred while fetching genres by author [Author class]");
@@ -135,23 +329,12 @@ public class Author {
     }
 
     public int getAverageRating() {
-        var connection = Database.getInstance().getConnection();
-        var query = "SELECT AVG(rating) FROM reviews WHERE book_id IN (SELECT id FROM books WHERE author_id = ?)";
-
-        try {
-            var stmt = connection.prepareStatement(query);
-            stmt.setInt(1, idProperty.get());
-
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            showError("An error occurred while fetching average rating by author [Author class]");
-        }
+        return (int) getRatingStats().getAverage();
+    }
 
-        return 0;
+    // Rolled up from the rating statistics of the author's books
+    public BookRatingStats getRatingStats() {
+        return BookRatingStats.forAuthor(idProperty.get());
     }
 
     @Override
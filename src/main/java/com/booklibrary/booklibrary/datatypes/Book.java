@@ -1,19 +1,60 @@
 package com.booklibrary.booklibrary.datatypes;
 
 import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.database.PooledConnection;
+import com.booklibrary.booklibrary.database.SearchIndex;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.booklibrary.booklibrary.utils.Utils.showError;
 
 public class Book {
+    private static final String LISTING_COLUMNS = """
+            SELECT b.*, a.full_name AS author_name, m.full_name AS reserved_by_name,
+                   CAST(s.rating_sum AS REAL) / s.review_count AS average_rating
+            """;
+    private static final String LISTING_JOINS = """
+            LEFT JOIN authors a ON a.id = b.author_id
+            LEFT JOIN members m ON m.id = b.reserved_by
+            LEFT JOIN book_rating_stats s ON s.book_id = b.id
+            """;
+    private static final String LISTING_QUERY = LISTING_COLUMNS + "FROM books b\n" + LISTING_JOINS;
+    private static final String SEARCH_QUERY = LISTING_COLUMNS
+            + "FROM (SELECT rowid AS id, " + SearchIndex.RANK + " AS score FROM books_fts WHERE books_fts MATCH ? "
+            + "ORDER BY " + SearchIndex.RANK + " LIMIT ? OFFSET ?) f\n"
+            + "JOIN books b ON b.id = f.id\n"
+            + LISTING_JOINS
+            + "ORDER BY f.score";
+
+    // Columns the book listing can be keyset-paginated by; ties are broken by id
+    public enum SortKey {
+        ID("id"),
+        TITLE("title"),
+        GENRE("genre"),
+        YEAR("year");
+
+        private final String column;
+
+        SortKey(String column) {
+            this.column = column;
+        }
+    }
+
+    // Position of a row in a sorted listing, pages continue after it
+    public record Cursor(Object sortValue, int id) {
+    }
+
     private final IntegerProperty idProperty;
     private final StringProperty titleProperty;
     private final IntegerProperty authorIdProperty;
@@ -21,6 +62,11 @@ public class Book {
     private final IntegerProperty yearProperty;
     private final IntegerProperty reservedByProperty;
 
+    // Precomputed by the listing loader, lazily resolved otherwise
+    private StringProperty authorNameProperty;
+    private IntegerProperty averageRatingProperty;
+    private StringProperty reservedByNameProperty;
+
     private Book(int id, String title, int authorId, String genre, int year, Integer reservedBy) {
         this.idProperty = new SimpleIntegerProperty(id);
         this.titleProperty = new SimpleStringProperty(title);
@@ -31,11 +77,10 @@ public class Book {
     }
 
     public static void create(String title, int authorId, String genre, int year) {
-        var conn = Database.getInstance().getConnection();
         var query = "INSERT INTO books (title, author_id, genre, year) VALUES (?, ?, ?, ?)";
 
-        try {
-            var stmt = conn.prepareStatement(query);
+        try (var conn = Database.getInstance().writer()) {
+            var stmt = conn.prepare(query);
             stmt.setString(1, title);
             stmt.setInt(2, authorId);
             stmt.setString(3, genre);
@@ -49,17 +94,17 @@ public class Book {
     }
 
     public static List<Book> getByAuthor(int authorId) {
-        var conn = Database.getInstance().getConnection();
         var query = "SELECT * FROM books WHERE author_id = ?";
 
-        try {
-            var stmt = conn.prepareStatement(query);
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
             stmt.setInt(1, authorId);
 
-            var rs = stmt.executeQuery();
             var books = new ArrayList<Book>();
-            while (rs.next()) {
-                books.add(new Book(rs.getInt("id"), rs.getString("title"), rs.getInt("author_id"), rs.getString("genre"), rs.getInt("year"), rs.findColumn("reserved_by") != 0 ? rs.getInt("reserved_by") : null));
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(fromRow(rs));
+                }
             }
 
             return books;
@@ -72,16 +117,16 @@ public class Book {
     }
 
     public static List<Book> getBooks() {
-        var conn = Database.getInstance().getConnection();
         var query = "SELECT * FROM books";
         var books = new ArrayList<Book>();
 
-        try {
-            var stmt = conn.prepareStatement(query);
-            var rs = stmt.executeQuery();
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
 
-            while (rs.next()) {
-                books.add(new Book(rs.getInt("id"), rs.getString("title"), rs.getInt("author_id"), rs.getString("genre"), rs.getInt("year"), rs.findColumn("reserved_by") != 0 ? rs.getInt("reserved_by") : null));
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(fromRow(rs));
+                }
             }
         } catch (SQLException e) {
             showError("An error occurred while fetching books");
@@ -91,18 +136,230 @@ public class Book {
         return books;
     }
 
-    public static Book findById(int i) {
-        var conn = Database.getInstance().getConnection();
-        var query = "SELECT * FROM books WHERE id = ?";
+    // Loads books with author name, average rating and reserver name in one query, so table cells don't hit the database
+    public static List<Book> getBookListings() {
+        var books = new ArrayList<Book>();
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(LISTING_QUERY);
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(fromListingRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            showError("An error occurred while fetching book listings");
+            e.printStackTrace();
+        }
+
+        return books;
+    }
+
+    public static List<Book> getBookListingsByIds(Collection<Integer> ids) {
+        try (var conn = Database.getInstance().reader()) {
+            return getBookListingsByIds(conn, ids);
+        } catch (SQLException e) {
+            showError("An error occurred while fetching books by id");
+            e.printStackTrace();
+        }
+
+        return new ArrayList<>();
+    }
+
+    public static List<Book> getBookListingsByIds(PooledConnection conn, Collection<Integer> ids) throws SQLException {
+        var books = new ArrayList<Book>();
+
+        for (var chunk : Queries.chunks(ids)) {
+            var query = LISTING_QUERY + "WHERE b.id IN (" + Queries.placeholders(chunk.size()) + ")";
+            var stmt = conn.prepare(query);
+            for (int i = 0; i < chunk.size(); i++) {
+                stmt.setInt(i + 1, chunk.get(i));
+            }
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(fromListingRow(rs));
+                }
+            }
+        }
+
+        return books;
+    }
+
+    /**
+     * Full-text search over title, genre and author name, best matches first. Every word of the text is
+     * matched as a prefix, so partially typed words already find results.
+     */
+    public static List<Book> search(String text, int limit, int offset) {
+        try (var conn = Database.getInstance().reader()) {
+            return search(conn, text, limit, offset);
+        } catch (SQLException e) {
+            showError("An error occurred while searching books");
+            e.printStackTrace();
+        }
+
+        return new ArrayList<>();
+    }
+
+    public static List<Book> search(PooledConnection conn, String text, int limit, int offset) throws SQLException {
+        var match = SearchIndex.toMatchQuery(text);
+        var books = new ArrayList<Book>();
+
+        if (match == null) {
+            return books;
+        }
+
+        var stmt = conn.prepare(SEARCH_QUERY);
+        stmt.setString(1, match);
+        stmt.setInt(2, limit);
+        stmt.setInt(3, offset);
+
+        try (var rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                books.add(fromListingRow(rs));
+            }
+        }
+
+        return books;
+    }
+
+    public static CompletableFuture<List<Book>> searchAsync(String text, int limit, int offset) {
+        return DatabaseExecutor.supply(() -> search(text, limit, offset));
+    }
+
+    public static int count() {
+        var query = "SELECT COUNT(*) FROM books";
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
+
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        } catch (SQLException e) {
+            showError("An error occurred while counting books");
+            e.printStackTrace();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Loads the page of book listings that follows the cursor in the given order, or the first page when the
+     * cursor is null. Seeks through the (sort column, id) order instead of skipping rows with OFFSET.
+     */
+    public static List<Book> getBookListingsPage(SortKey sortKey, boolean ascending, Cursor after, int limit) {
+        try (var conn = Database.getInstance().reader()) {
+            return getBookListingsPage(conn, sortKey, ascending, after, limit);
+        } catch (SQLException e) {
+            showError("An error occurred while fetching a page of books");
+            e.printStackTrace();
+        }
+
+        return new ArrayList<>();
+    }
 
-        try {
-            var stmt = conn.prepareStatement(query);
-            stmt.setInt(1, i);
+    public static List<Book> getBookListingsPage(PooledConnection conn, SortKey sortKey, boolean ascending, Cursor after, int limit) throws SQLException {
+        var direction = ascending ? "ASC" : "DESC";
+        var comparison = ascending ? ">" : "<";
+        var column = "b." + sortKey.column;
+        var query = new StringBuilder(LISTING_QUERY);
 
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return new Book(rs.getInt("id"), rs.getString("title"), rs.getInt("author_id"), rs.getString("genre"), rs.getInt("year"), rs.findColumn("reserved_by") != 0 ? rs.getInt("reserved_by") : null);
+        if (after != null) {
+            query.append(sortKey == SortKey.ID
+                    ? "WHERE b.id " + comparison + " ? "
+                    : "WHERE (" + column + ", b.id) " + comparison + " (?, ?) ");
+        }
+
+        query.append(sortKey == SortKey.ID
+                ? "ORDER BY b.id " + direction
+                : "ORDER BY " + column + " " + direction + ", b.id " + direction);
+        query.append(" LIMIT ?");
+
+        var books = new ArrayList<Book>();
+        var stmt = conn.prepare(query.toString());
+        var index = 1;
+
+        if (after != null) {
+            if (sortKey != SortKey.ID) {
+                stmt.setObject(index++, after.sortValue());
+            }
+            stmt.setInt(index++, after.id());
+        }
+        stmt.setInt(index, limit);
+
+        try (var rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                books.add(fromListingRow(rs));
             }
+        }
+
+        return books;
+    }
+
+    // Finds the cursor of the row at the given position, used to jump to a page whose predecessor isn't loaded
+    public static Cursor getCursorAt(SortKey sortKey, boolean ascending, int position) {
+        var direction = ascending ? "ASC" : "DESC";
+        var query = "SELECT " + sortKey.column + ", id FROM books ORDER BY " + sortKey.column + " " + direction
+                + (sortKey == SortKey.ID ? "" : ", id " + direction) + " LIMIT 1 OFFSET ?";
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
+            stmt.setInt(1, position);
+
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Cursor(rs.getObject(1), rs.getInt(2));
+                }
+            }
+        } catch (SQLException e) {
+            showError("An error occurred while locating a page of books");
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    public Cursor getCursor(SortKey sortKey) {
+        var sortValue = switch (sortKey) {
+            case ID -> idProperty.get();
+            case TITLE -> titleProperty.get();
+            case GENRE -> genreProperty.get();
+            case YEAR -> yearProperty.get();
+        };
+
+        return new Cursor(sortValue, idProperty.get());
+    }
+
+    public static CompletableFuture<List<Book>> getBookListingsAsync() {
+        return DatabaseExecutor.supply(Book::getBookListings);
+    }
+
+    public static CompletableFuture<Book> findByIdAsync(int id) {
+        return DatabaseExecutor.supply(() -> findById(id));
+    }
+
+    private static Book fromRow(ResultSet rs) throws SQLException {
+        var reservedBy = rs.getObject("reserved_by") != null ? rs.getInt("reserved_by") : null;
+        return new Book(rs.getInt("id"), rs.getString("title"), rs.getInt("author_id"), rs.getString("genre"), rs.getInt("year"), reservedBy);
+    }
+
+    private static Book fromListingRow(ResultSet rs) throws SQLException {
+        var book = fromRow(rs);
+
+        book.authorNameProperty = new SimpleStringProperty(rs.getString("author_name"));
+        book.averageRatingProperty = new SimpleIntegerProperty(rs.getInt("average_rating"));
+        book.reservedByNameProperty = new SimpleStringProperty(rs.getString("reserved_by_name"));
+
+        return book;
+    }
+
+    public static Book findById(int i) {
+        try (var conn = Database.getInstance().reader()) {
+            return findById(conn, i);
         } catch (SQLException e) {
             showError("An error occurred while fetching a book by id");
             e.printStackTrace();
@@ -111,6 +368,15 @@ public class Book {
         return null;
     }
 
+    public static Book findById(PooledConnection conn, int id) throws SQLException {
+        var stmt = conn.prepare("SELECT * FROM books WHERE id = ?");
+        stmt.setInt(1, id);
+
+        try (var rs = stmt.executeQuery()) {
+            return rs.next() ? fromRow(rs) : null;
+        }
+    }
+
     public IntegerProperty getIdProperty() {
         return idProperty;
     }
@@ -135,28 +401,42 @@ public class Book {
         return reservedByProperty;
     }
 
-    public Author getAuthor() {
-        return Author.getById(authorIdProperty.get());
+    public StringProperty getAuthorNameProperty() {
+        if (authorNameProperty == null) {
+            var author = getAuthor();
+            authorNameProperty = new SimpleStringProperty(author != null ? author.getFullNameProperty().get() : null);
+        }
+
+        return authorNameProperty;
     }
 
-    public int getAverageRating() {
-        var conn = Database.getInstance().getConnection();
-        var query = "SELECT AVG(rating) FROM reviews WHERE book_id = ?";
+    public IntegerProperty getAverageRatingProperty() {
+        if (averageRatingProperty == null) {
+            averageRatingProperty = new SimpleIntegerProperty(getAverageRating());
+        }
 
-        try {
-            var stmt = conn.prepareStatement(query);
-            stmt.setInt(1, idProperty.get());
+        return averageRatingProperty;
+    }
 
-            var rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-        } catch (SQLException e) {
-            showError("An error occurred while fetching average rating");
-            e.printStackTrace();
+    public StringProperty getReservedByNameProperty() {
+        if (reservedByNameProperty == null) {
+            var member = getReservedByMember();
+            reservedByNameProperty = new SimpleStringProperty(member != null ? member.getFullNameProperty().get() : null);
         }
 
-        return 0;
+        return reservedByNameProperty;
+    }
+
+    public Author getAuthor() {
+        return Author.getById(authorIdProperty.get());
+    }
+
+    public int getAverageRating() {
+        return (int) getRatingStats().getAverage();
+    }
+
+    public BookRatingStats getRatingStats() {
+        return BookRatingStats.forBook(idProperty.get());
     }
 
     public boolean isReserved() {
@@ -172,42 +452,28 @@ public class Book {
     }
 
     public void delete() {
-        var conn = Database.getInstance().getConnection();
         var query = "DELETE FROM books WHERE id = ?";
 
-        try {
-            var stmt = conn.prepareStatement(query);
-            stmt.setInt(1, idProperty.get());
+        try (var conn = Database.getInstance().writer()) {
+            conn.inTransaction(() -> {
+                BookRatingStats.deleteForBook(conn, idProperty.get());
 
-            stmt.executeUpdate();
+                var stmt = conn.prepare(query);
+                stmt.setInt(1, idProperty.get());
+                return stmt.executeUpdate();
+            });
         } catch (SQLException e) {
             showError("An error occurred while deleting a book");
             e.printStackTrace();
         }
     }
 
-    public void reserve(Integer memberId) {
-        var conn = Database.getInstance().getConnection();
-
-        try {
-            if (memberId != null) {
-                var sql = "UPDATE books SET reserved_by = ? WHERE id = ?";
-                var stmt = conn.prepareStatement(sql);
-
-                stmt.setInt(1, memberId);
-                stmt.setInt(2, idProperty.get());
-                stmt.executeUpdate();
-            } else {
-                var sql = "UPDATE books SET reserved_by = NULL WHERE id = ?";
-                var stmt = conn.prepareStatement(sql);
+    public ReservationRecord.Result reserve(int memberId) {
+        return ReservationRecord.reserve(idProperty.get(), memberId);
+    }
 
-                stmt.setInt(1, idProperty.get());
-                stmt.executeUpdate();
-            }
-        } catch (SQLException e) {
-            showError("An error occurred while reserving a book");
-            e.printStackTrace();
-        }
+    public ReservationRecord.Result returnReservation() {
+        return ReservationRecord.returnBook(idProperty.get());
     }
 
     public void logReservation(int memberId, Date reservedAt) {
@@ -0,0 +1,234 @@
+package com.booklibrary.booklibrary.datatypes;
+
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.database.PooledConnection;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.booklibrary.booklibrary.utils.Utils.showError;
+
+/**
+ * Review count, rating sum and per-star histogram of a book, kept in book_rating_stats. The row is updated
+ * in the same transaction that inserts a review, so reading a rating never has to aggregate the reviews.
+ * Author figures are rolled up from the rows of the author's books.
+ */
+public class BookRatingStats {
+    private static final int MAX_STARS = 5;
+    private static final String AGGREGATE_COLUMNS = """
+            COUNT(rating), COALESCE(SUM(rating), 0),
+            COUNT(CASE rating WHEN 1 THEN 1 END), COUNT(CASE rating WHEN 2 THEN 1 END), COUNT(CASE rating WHEN 3 THEN 1 END),
+            COUNT(CASE rating WHEN 4 THEN 1 END), COUNT(CASE rating WHEN 5 THEN 1 END)
+            """;
+    private static final String COLUMNS = "review_count, rating_sum, stars_1, stars_2, stars_3, stars_4, stars_5";
+
+    private final int reviewCount;
+    private final long ratingSum;
+    private final int[] starCounts;
+
+    private BookRatingStats(int reviewCount, long ratingSum, int[] starCounts) {
+        this.reviewCount = reviewCount;
+        this.ratingSum = ratingSum;
+        this.starCounts = starCounts;
+    }
+
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public long getRatingSum() {
+        return ratingSum;
+    }
+
+    public double getAverage() {
+        return reviewCount == 0 ? 0 : (double) ratingSum / reviewCount;
+    }
+
+    // Number of reviews that gave the given number of stars
+    public int getStarCount(int stars) {
+        return stars < 1 || stars > MAX_STARS ? 0 : starCounts[stars - 1];
+    }
+
+    public static BookRatingStats forBook(int bookId) {
+        try (var conn = Database.getInstance().reader()) {
+            return forBook(conn, bookId);
+        } catch (SQLException e) {
+            showError("An error occurred while fetching rating statistics");
+            e.printStackTrace();
+        }
+
+        return new BookRatingStats(0, 0, new int[MAX_STARS]);
+    }
+
+    public static BookRatingStats forBook(PooledConnection conn, int bookId) throws SQLException {
+        var stmt = conn.prepare("SELECT " + COLUMNS + " FROM book_rating_stats WHERE book_id = ?");
+        stmt.setInt(1, bookId);
+
+        try (var rs = stmt.executeQuery()) {
+            return rs.next() ? fromRow(rs) : new BookRatingStats(0, 0, new int[MAX_STARS]);
+        }
+    }
+
+    public static CompletableFuture<BookRatingStats> forBookAsync(int bookId) {
+        return DatabaseExecutor.supply(() -> forBook(bookId));
+    }
+
+    // Sums the statistics of every book by the author
+    public static BookRatingStats forAuthor(int authorId) {
+        var query = """
+                SELECT SUM(s.review_count), SUM(s.rating_sum), SUM(s.stars_1), SUM(s.stars_2), SUM(s.stars_3), SUM(s.stars_4), SUM(s.stars_5)
+                FROM books b
+                JOIN book_rating_stats s ON s.book_id = b.id
+                WHERE b.author_id = ?""";
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
+            stmt.setInt(1, authorId);
+
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return fromRow(rs);
+                }
+            }
+        } catch (SQLException e) {
+            showError("An error occurred while fetching rating statistics by author");
+            e.printStackTrace();
+        }
+
+        return new BookRatingStats(0, 0, new int[MAX_STARS]);
+    }
+
+    // Adds one rating to a book's statistics; must run in the transaction that inserts the review
+    static void recordReview(PooledConnection conn, int bookId, Integer rating) throws SQLException {
+        // Counted like COUNT(rating) in the rebuild, a review without a rating isn't part of the statistics
+        if (rating == null) {
+            return;
+        }
+
+        var query = """
+                INSERT INTO book_rating_stats (book_id, review_count, rating_sum, stars_1, stars_2, stars_3, stars_4, stars_5)
+                VALUES (?1, 1, ?2, ?2 = 1, ?2 = 2, ?2 = 3, ?2 = 4, ?2 = 5)
+                ON CONFLICT (book_id) DO UPDATE SET
+                    review_count = review_count + 1,
+                    rating_sum = rating_sum + excluded.rating_sum,
+                    stars_1 = stars_1 + excluded.stars_1,
+                    stars_2 = stars_2 + excluded.stars_2,
+                    stars_3 = stars_3 + excluded.stars_3,
+                    stars_4 = stars_4 + excluded.stars_4,
+                    stars_5 = stars_5 + excluded.stars_5""";
+
+        var stmt = conn.prepare(query);
+        stmt.setInt(1, bookId);
+        stmt.setInt(2, rating);
+        stmt.executeUpdate();
+    }
+
+    static void deleteForBook(PooledConnection conn, int bookId) throws SQLException {
+        var stmt = conn.prepare("DELETE FROM book_rating_stats WHERE book_id = ?");
+        stmt.setInt(1, bookId);
+        stmt.executeUpdate();
+    }
+
+    static void deleteForAuthor(PooledConnection conn, int authorId) throws SQLException {
+        var stmt = conn.prepare("DELETE FROM book_rating_stats WHERE book_id IN (SELECT id FROM books WHERE author_id = ?)");
+        stmt.setInt(1, authorId);
+        stmt.executeUpdate();
+    }
+
+    /**
+     * Recomputes the statistics of every book from the reviews table. The reviews are aggregated in
+     * parallel, one book id range per reader connection, while the writer is held so no review can be
+     * added in between. Returns the number of books that have reviews.
+     */
+    public static int rebuild() throws SQLException {
+        var db = Database.getInstance();
+
+        try (var writer = db.writer()) {
+            return writer.inTransaction(() -> {
+                // Deleting first takes the write lock, so the readers below see the final set of reviews
+                writer.prepare("DELETE FROM book_rating_stats").executeUpdate();
+
+                var rows = new ArrayList<long[]>();
+                for (var part : aggregateInParallel(db.getMaxReaders())) {
+                    rows.addAll(part.join());
+                }
+
+                var insert = writer.prepare("INSERT INTO book_rating_stats (book_id, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+                for (var row : rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        insert.setLong(i + 1, row[i]);
+                    }
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+
+                return rows.size();
+            });
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static List<CompletableFuture<List<long[]>>> aggregateInParallel(int partitions) throws SQLException {
+        int maxBookId;
+        try (var conn = Database.getInstance().reader()) {
+            try (var rs = conn.prepare("SELECT COALESCE(MAX(book_id), 0) FROM reviews").executeQuery()) {
+                maxBookId = rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+
+        var rangeSize = maxBookId / partitions + 1;
+        var parts = new ArrayList<CompletableFuture<List<long[]>>>();
+
+        for (int from = 0; from <= maxBookId; from += rangeSize) {
+            var first = from;
+            var last = from + rangeSize - 1;
+            parts.add(DatabaseExecutor.supply(() -> aggregate(first, last)));
+        }
+
+        return parts;
+    }
+
+    private static List<long[]> aggregate(int firstBookId, int lastBookId) {
+        var query = "SELECT book_id, " + AGGREGATE_COLUMNS + "FROM reviews WHERE book_id BETWEEN ? AND ? GROUP BY book_id";
+        var rows = new ArrayList<long[]>();
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
+            stmt.setInt(1, firstBookId);
+            stmt.setInt(2, lastBookId);
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    // book_id, review_count, rating_sum and one count per star
+                    var row = new long[3 + MAX_STARS];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getLong(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+
+        return rows;
+    }
+
+    private static BookRatingStats fromRow(ResultSet rs) throws SQLException {
+        var starCounts = new int[MAX_STARS];
+        for (int i = 0; i < MAX_STARS; i++) {
+            starCounts[i] = rs.getInt(3 + i);
+        }
+
+        return new BookRatingStats(rs.getInt(1), rs.getLong(2), starCounts);
+    }
+}
@@ -1,20 +1,35 @@
 package com.booklibrary.booklibrary.datatypes;
 
 import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.database.PooledConnection;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class BookReview {
+    private static final String PAGE_QUERY = """
+            SELECT r.*, m.full_name AS member_name
+            FROM reviews r
+            LEFT JOIN members m ON m.id = r.member_id
+            WHERE r.book_id = ?
+            """;
+
     private final IntegerProperty idProperty;
     private final IntegerProperty memberIdProperty;
     private final StringProperty textProperty;
     private final IntegerProperty ratingProperty;
+    private final StringProperty memberNameProperty = new SimpleStringProperty();
 
     private BookReview(int id, int memberId, String text, int stars) {
         this.idProperty = new SimpleIntegerProperty(id);
@@ -39,24 +54,29 @@ public class BookReview {
         return ratingProperty;
     }
 
+    // Only filled for reviews loaded in pages or just created
+    public StringProperty getMemberNameProperty() {
+        return memberNameProperty;
+    }
+
     public static List<BookReview> getReviewsForBook(Book book) {
-        var conn = Database.getInstance().getConnection();
         var query = "SELECT * FROM reviews WHERE book_id = ?";
 
-        try {
-            var stmt = conn.prepareStatement(query);
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
             stmt.setInt(1, book.getIdProperty().get());
 
-            var result = stmt.executeQuery();
             var reviews = new ArrayList<BookReview>();
-            while (result.next()) {
-                var review = new BookReview(
-                    result.getInt("id"),
-                    result.getInt("member_id"),
-                    result.getString("text"),
-                    result.getInt("rating")
-                );
-                reviews.add(review);
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    var review = new BookReview(
+                        result.getInt("id"),
+                        result.getInt("member_id"),
+                        result.getString("text"),
+                        result.getInt("rating")
+                    );
+                    reviews.add(review);
+                }
             }
             return reviews;
         } catch (Exception e) {
@@ -65,16 +85,41 @@ public class BookReview {
         }
     }
 
-    public static List<BookReview> getByMember(int memberId) {
-        var conn = Database.getInstance().getConnection();
-        var query = "SELECT * FROM reviews WHERE member_id = ?";
+    public static CompletableFuture<List<BookReview>> getReviewsForBookAsync(Book book) {
+        return DatabaseExecutor.supply(() -> getReviewsForBook(book));
+    }
 
-        try {
-            var stmt = conn.prepareStatement(query);
-            stmt.setInt(1, memberId);
+    /**
+     * One page of a book's reviews with the member names joined in, newest first. Pass the last review of
+     * the previous page to continue after it, or null for the first page.
+     */
+    public static List<BookReview> getPageForBook(int bookId, BookReview after, int limit) {
+        return getPageForBookAfterId(bookId, after != null ? after.getIdProperty().get() : null, limit);
+    }
 
-            var result = stmt.executeQuery();
-            var reviews = new ArrayList<BookReview>();
+    // Same as getPageForBook, continuing after the review with the given id
+    public static List<BookReview> getPageForBookAfterId(int bookId, Integer afterId, int limit) {
+        try (var conn = Database.getInstance().reader()) {
+            return getPageForBookAfterId(conn, bookId, afterId, limit);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    public static List<BookReview> getPageForBookAfterId(PooledConnection conn, int bookId, Integer afterId, int limit) throws SQLException {
+        var query = PAGE_QUERY + (afterId != null ? "AND r.id < ? " : "") + "ORDER BY r.id DESC LIMIT ?";
+
+        var stmt = conn.prepare(query);
+        var index = 1;
+        stmt.setInt(index++, bookId);
+        if (afterId != null) {
+            stmt.setInt(index++, afterId);
+        }
+        stmt.setInt(index, limit);
+
+        var reviews = new ArrayList<BookReview>();
+        try (var result = stmt.executeQuery()) {
             while (result.next()) {
                 var review = new BookReview(
                     result.getInt("id"),
@@ -82,8 +127,36 @@ public class BookReview {
                     result.getString("text"),
                     result.getInt("rating")
                 );
+                review.memberNameProperty.set(result.getString("member_name"));
                 reviews.add(review);
             }
+        }
+        return reviews;
+    }
+
+    public static CompletableFuture<List<BookReview>> getPageForBookAsync(int bookId, BookReview after, int limit) {
+        return DatabaseExecutor.supply(() -> getPageForBook(bookId, after, limit));
+    }
+
+    public static List<BookReview> getByMember(int memberId) {
+        var query = "SELECT * FROM reviews WHERE member_id = ?";
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
+            stmt.setInt(1, memberId);
+
+            var reviews = new ArrayList<BookReview>();
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    var review = new BookReview(
+                        result.getInt("id"),
+                        result.getInt("member_id"),
+                        result.getString("text"),
+                        result.getInt("rating")
+                    );
+                    reviews.add(review);
+                }
+            }
             return reviews;
         } catch (Exception e) {
             e.printStackTrace();
@@ -91,19 +164,89 @@ public class BookReview {
         }
     }
 
-    public static void create(int memberId, int bookId, String text, int rating) {
-        var conn = Database.getInstance().getConnection();
-        var query = "INSERT INTO reviews (member_id, book_id, text, rating) VALUES (?, ?, ?, ?)";
+    public static int countByMember(int memberId) {
+        var query = "SELECT COUNT(*) FROM reviews WHERE member_id = ?";
 
-        try {
-            var stmt = conn.prepareStatement(query);
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
             stmt.setInt(1, memberId);
-            stmt.setInt(2, bookId);
-            stmt.setString(3, text);
-            stmt.setInt(4, rating);
-            stmt.executeUpdate();
+
+            try (var result = stmt.executeQuery()) {
+                if (result.next()) {
+                    return result.getInt(1);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return 0;
+    }
+
+    // Returns the number of reviews per member id; members without reviews map to 0
+    public static Map<Integer, Integer> countByMembers(Collection<Integer> memberIds) {
+        try (var conn = Database.getInstance().reader()) {
+            return countByMembers(conn, memberIds);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        var counts = new HashMap<Integer, Integer>();
+        for (var id : memberIds) {
+            counts.put(id, 0);
+        }
+        return counts;
+    }
+
+    public static Map<Integer, Integer> countByMembers(PooledConnection conn, Collection<Integer> memberIds) throws SQLException {
+        var counts = new HashMap<Integer, Integer>();
+
+        for (var id : memberIds) {
+            counts.put(id, 0);
+        }
+
+        for (var chunk : Queries.chunks(memberIds)) {
+            var query = "SELECT member_id, COUNT(*) FROM reviews WHERE member_id IN (" + Queries.placeholders(chunk.size()) + ") GROUP BY member_id";
+            var stmt = conn.prepare(query);
+            for (int i = 0; i < chunk.size(); i++) {
+                stmt.setInt(i + 1, chunk.get(i));
+            }
+
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    counts.put(result.getInt(1), result.getInt(2));
+                }
+            }
+        }
+
+        return counts;
+    }
+
+    // Inserts the review and updates the book's rating statistics in one transaction; returns null if that failed
+    public static BookReview create(int memberId, int bookId, String text, int rating) {
+        var query = "INSERT INTO reviews (member_id, book_id, text, rating) VALUES (?, ?, ?, ?)";
+
+        try (var conn = Database.getInstance().writer()) {
+            return conn.inTransaction(() -> {
+                var stmt = conn.prepare(query);
+                stmt.setInt(1, memberId);
+                stmt.setInt(2, bookId);
+                stmt.setString(3, text);
+                stmt.setInt(4, rating);
+                stmt.executeUpdate();
+
+                // Read the id before the statistics upsert, which replaces the connection's last insert id
+                BookReview review;
+                try (var keys = stmt.getGeneratedKeys()) {
+                    review = keys.next() ? new BookReview(keys.getInt(1), memberId, text, rating) : null;
+                }
+
+                BookRatingStats.recordReview(conn, bookId, rating);
+                return review;
+            });
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         }
     }
 }
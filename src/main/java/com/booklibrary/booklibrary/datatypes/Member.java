@@ -1,6 +1,10 @@
 package com.booklibrary.booklibrary.datatypes;
 
 import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.database.PooledConnection;
+import com.booklibrary.booklibrary.database.EntityCache;
+import com.booklibrary.booklibrary.database.NameIndex;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -8,46 +12,66 @@ import javafx.beans.property.StringProperty;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.booklibrary.booklibrary.utils.Utils.showError;
 
 public class Member {
+    private static final EntityCache<Integer, Member> CACHE = new EntityCache<>(10_000, 10, TimeUnit.MINUTES);
+    private static final NameIndex NAMES = new NameIndex("SELECT id, full_name FROM members");
+
     private final IntegerProperty idProperty;
     private final StringProperty fullNameProperty;
 
+    // Filled in bulk by loadReviewCounts, lazily resolved otherwise
+    private IntegerProperty reviewCountProperty;
+
     private Member(int id, String fullName) {
         this.idProperty = new SimpleIntegerProperty(id);
         this.fullNameProperty = new SimpleStringProperty(fullName);
     }
 
-    public static void create(String fullName) {
-        var connection = Database.getInstance().getConnection();
+    // Returns the id of the new member, or -1 if it could not be created
+    public static int create(String fullName) {
         var query = "INSERT INTO members (full_name) VALUES (?)";
+        var id = -1;
 
-        try {
-            var stmt = connection.prepareStatement(query);
+        try (var connection = Database.getInstance().writer()) {
+            var stmt = connection.prepare(query);
             stmt.setString(1, fullName);
 
             stmt.executeUpdate();
+            try (var keys = stmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    id = keys.getInt(1);
+                }
+            }
         } catch (SQLException e) {
             showError("An error occurred while creating a member");
             e.printStackTrace();
         }
+
+        // Once the writer is released, so other writers don't wait on the name index
+        if (id >= 0) {
+            NAMES.put(id, fullName);
+        }
+        return id;
     }
 
     public static Member findById(int id) {
-        var connection = Database.getInstance().getConnection();
-        var query = "SELECT * FROM members WHERE id = ?";
+        return CACHE.get(id, Member::loadById);
+    }
 
-        try {
-            var stmt = connection.prepareStatement(query);
-            stmt.setInt(1, id);
+    public static EntityCache<Integer, Member> getCache() {
+        return CACHE;
+    }
 
-            var result = stmt.executeQuery();
-            if (result.next()) {
-                return new Member(result.getInt("id"), result.getString("full_name"));
-            }
+    private static Member loadById(int id) {
+        try (var connection = Database.getInstance().reader()) {
+            return findById(connection, id);
         } catch (SQLException e) {
             showError("An error occurred while trying to find a member by id");
             e.printStackTrace();
@@ -55,17 +79,27 @@ public class Member {
         return null;
     }
 
+    // Reads the member from the database, bypassing the cache
+    public static Member findById(PooledConnection connection, int id) throws SQLException {
+        var stmt = connection.prepare("SELECT * FROM members WHERE id = ?");
+        stmt.setInt(1, id);
+
+        try (var result = stmt.executeQuery()) {
+            return result.next() ? new Member(result.getInt("id"), result.getString("full_name")) : null;
+        }
+    }
+
     public static Member search(String search) {
-        var connection = Database.getInstance().getConnection();
         var query = "SELECT * FROM members WHERE full_name LIKE ?";
 
-        try {
-            var stmt = connection.prepareStatement(query);
+        try (var connection = Database.getInstance().reader()) {
+            var stmt = connection.prepare(query);
             stmt.setString(1, search);
 
-            var result = stmt.executeQuery();
-            if (result.next()) {
-                return new Member(result.getInt("id"), result.getString("full_name"));
+            try (var result = stmt.executeQuery()) {
+                if (result.next()) {
+                    return new Member(result.getInt("id"), result.getString("full_name"));
+                }
             }
         } catch (SQLException e) {
             showError("An error occurred while searching for members");
@@ -76,25 +110,116 @@ public class Member {
     }
 
     public static List<Member> getMembers() {
-        var connection = Database.getInstance().getConnection();
         var query = "SELECT * FROM members";
         var members = new ArrayList<Member>();
 
-        try {
-            var stmt = connection.prepareStatement(query);
-            var result = stmt.executeQuery();
+        try (var connection = Database.getInstance().reader()) {
+            var stmt = connection.prepare(query);
+
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    members.add(new Member(result.getInt("id"), result.getString("full_name")));
+                }
+            }
+        } catch (SQLException e) {
+            showError("An error occurred while fetching members");
+            e.printStackTrace();
+        }
+
+        return members;
+    }
+
+    // One page of members in id order, continuing after the given id
+    public static List<Member> getPage(PooledConnection connection, int afterId, int limit) throws SQLException {
+        var query = "SELECT * FROM members WHERE id > ? ORDER BY id LIMIT ?";
+        var members = new ArrayList<Member>();
+
+        var stmt = connection.prepare(query);
+        stmt.setInt(1, afterId);
+        stmt.setInt(2, limit);
 
+        try (var result = stmt.executeQuery()) {
             while (result.next()) {
                 members.add(new Member(result.getInt("id"), result.getString("full_name")));
             }
+        }
+
+        return members;
+    }
+
+    // Loads the given members together with their review counts
+    public static List<Member> getByIds(Collection<Integer> ids) {
+        try (var connection = Database.getInstance().reader()) {
+            return getByIds(connection, ids);
         } catch (SQLException e) {
-            showError("An error occurred while fetching members");
+            showError("An error occurred while fetching members by id");
             e.printStackTrace();
         }
 
+        return new ArrayList<>();
+    }
+
+    public static List<Member> getByIds(PooledConnection connection, Collection<Integer> ids) throws SQLException {
+        var members = new ArrayList<Member>();
+
+        for (var chunk : Queries.chunks(ids)) {
+            var query = "SELECT * FROM members WHERE id IN (" + Queries.placeholders(chunk.size()) + ")";
+            var stmt = connection.prepare(query);
+            for (int i = 0; i < chunk.size(); i++) {
+                stmt.setInt(i + 1, chunk.get(i));
+            }
+
+            try (var result = stmt.executeQuery()) {
+                while (result.next()) {
+                    members.add(new Member(result.getInt("id"), result.getString("full_name")));
+                }
+            }
+        }
+
+        var counts = BookReview.countByMembers(connection, ids);
+        for (var member : members) {
+            member.reviewCountProperty = new SimpleIntegerProperty(counts.getOrDefault(member.idProperty.get(), 0));
+        }
         return members;
     }
 
+    // Type-ahead lookup by name, served from memory once the name index has been loaded
+    public static List<Member> searchByName(String text, int limit) {
+        return NAMES.search(text, limit).stream()
+                .map(entry -> new Member(entry.id(), entry.name()))
+                .toList();
+    }
+
+    public static CompletableFuture<List<Member>> searchByNameAsync(String text, int limit) {
+        return DatabaseExecutor.supply(() -> searchByName(text, limit));
+    }
+
+    public static NameIndex getNameIndex() {
+        return NAMES;
+    }
+
+    public static CompletableFuture<List<Member>> getMembersAsync() {
+        return DatabaseExecutor.supply(Member::getMembers);
+    }
+
+    public static CompletableFuture<List<Member>> getMembersWithReviewCountsAsync() {
+        return DatabaseExecutor.supply(() -> {
+            var members = getMembers();
+            loadReviewCounts(members);
+            return members;
+        });
+    }
+
+    // Fetches review counts for a page of members with one query
+    public static void loadReviewCounts(List<Member> members) {
+        var ids = members.stream().map(member -> member.idProperty.get()).toList();
+        var counts = BookReview.countByMembers(ids);
+
+        for (var member : members) {
+            member.reviewCountProperty = new SimpleIntegerProperty(counts.getOrDefault(member.idProperty.get(), 0));
+        }
+    }
+
     public IntegerProperty getIdProperty() {
         return idProperty;
     }
@@ -106,23 +231,22 @@ public class Member {
     public void createReview(Book book, String review, int stars) {
         if (stars > 5 || stars < 1) {
             showError("Stars must be between 1 and 5");
+            return;
         }
 
-        var connection = Database.getInstance().getConnection();
-        var query = "INSERT INTO reviews (member_id, book_id, review, rating) VALUES (?, ?, ?, ?)";
+        BookReview.create(this.idProperty.get(), book.getIdProperty().get(), review, stars);
+    }
 
-        try {
-            var stmt = connection.prepareStatement(query);
-            stmt.setInt(1, this.idProperty.get());
-            stmt.setInt(2, book.getIdProperty().get());
-            stmt.setString(3, review);
-            stmt.setInt(4, stars);
+    public int getReviewCount() {
+        return getReviewCountProperty().get();
+    }
 
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            showError("An error occurred while creating a review for a book");
-            e.printStackTrace();
+    public IntegerProperty getReviewCountProperty() {
+        if (reviewCountProperty == null) {
+            reviewCountProperty = new SimpleIntegerProperty(BookReview.countByMember(idProperty.get()));
         }
+
+        return reviewCountProperty;
     }
 
     public List<BookReview> getReviews() {
@@ -130,18 +254,23 @@ public class Member {
     }
 
     public void delete() {
-        var connection = Database.getInstance().getConnection();
         var query = "DELETE FROM members WHERE id = ?";
 
-        try {
-            var stmt = connection.prepareStatement(query);
+        try (var connection = Database.getInstance().writer()) {
+            var stmt = connection.prepare(query);
             stmt.setInt(1, this.idProperty.get());
 
             stmt.executeUpdate();
+
+            // After the delete, so a concurrent findById can't put the row back in the cache
+            CACHE.invalidate(idProperty.get());
         } catch (SQLException e) {
             showError("An error occurred while deleting a member");
             e.printStackTrace();
+            return;
         }
+
+        NAMES.remove(idProperty.get());
     }
 
     @Override
@@ -0,0 +1,30 @@
+package com.booklibrary.booklibrary.datatypes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Helpers for queries that take a variable list of ids
+final class Queries {
+    // Stays well below SQLite's bound parameter limit
+    static final int MAX_IDS_PER_QUERY = 500;
+
+    private Queries() {
+    }
+
+    static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    static List<List<Integer>> chunks(Collection<Integer> ids) {
+        var list = new ArrayList<>(ids);
+        var chunks = new ArrayList<List<Integer>>();
+
+        for (int from = 0; from < list.size(); from += MAX_IDS_PER_QUERY) {
+            chunks.add(list.subList(from, Math.min(from + MAX_IDS_PER_QUERY, list.size())));
+        }
+
+        return chunks;
+    }
+}
@@ -1,24 +1,39 @@
 package com.booklibrary.booklibrary.datatypes;
 
 import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.database.PooledConnection;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.booklibrary.booklibrary.utils.Utils.showError;
 
 public class ReservationRecord {
+    private static final String HISTORY_PAGE_QUERY = """
+            SELECT r.*, m.full_name AS member_name
+            FROM reservation_records r
+            LEFT JOIN members m ON m.id = r.member_id
+            WHERE r.book_id = ?1
+            """;
+
     private final IntegerProperty idProperty;
     private final IntegerProperty memberIdProperty;
     private final IntegerProperty bookIdProperty;
     private final ObjectProperty<Timestamp> reservedAtProperty;
     private final ObjectProperty<Timestamp> returnedAtProperty;
+    // Only set for records loaded as history; the member otherwise has to be looked up
+    private StringProperty memberNameProperty;
 
     private ReservationRecord(int id, int memberId, int bookId, Timestamp reservedAt, Timestamp returnedAt) {
         this.idProperty = new SimpleIntegerProperty(id);
@@ -28,40 +43,98 @@ public class ReservationRecord {
         this.returnedAtProperty = new SimpleObjectProperty<>(returnedAt);
     }
 
-    public static void create(int memberId, int bookId, Timestamp reservedAt) {
-        var conn = Database.getInstance().getConnection();
-        var query = "INSERT INTO reservation_records (member_id, book_id, reserved_at) VALUES (?, ?, ?)";
+    // Outcome of reserving or returning a book
+    public enum Result {
+        SUCCESS,
+        // The book was reserved (or returned) by someone else in the meantime, or no longer exists
+        CONFLICT,
+        FAILED
+    }
 
-        try {
-            var stmt = conn.prepareStatement(query);
-            stmt.setInt(1, memberId);
-            stmt.setInt(2, bookId);
-            stmt.setTimestamp(3, reservedAt);
+    /**
+     * Reserves a book for a member and adds the reservation to the history in one transaction. The book is
+     * only updated while nobody holds it, so of two desks reserving it at the same time exactly one gets
+     * SUCCESS and the other CONFLICT, without reading the status first.
+     */
+    public static Result reserve(int bookId, int memberId) {
+        try (var conn = Database.getInstance().writer()) {
+            return conn.inTransaction(() -> {
+                var update = conn.prepare("UPDATE books SET reserved_by = ? WHERE id = ? AND reserved_by IS NULL");
+                update.setInt(1, memberId);
+                update.setInt(2, bookId);
 
-            stmt.executeUpdate();
+                if (update.executeUpdate() == 0) {
+                    return Result.CONFLICT;
+                }
+
+                var insert = conn.prepare("INSERT INTO reservation_records (member_id, book_id, reserved_at) VALUES (?, ?, ?)");
+                insert.setInt(1, memberId);
+                insert.setInt(2, bookId);
+                insert.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                insert.executeUpdate();
+
+                return Result.SUCCESS;
+            });
+        } catch (SQLException e) {
+            showError("An error occurred while reserving a book");
+            e.printStackTrace();
+            return Result.FAILED;
+        }
+    }
+
+    // Clears the reservation of a book and closes its history record in one transaction
+    public static Result returnBook(int bookId) {
+        try (var conn = Database.getInstance().writer()) {
+            return conn.inTransaction(() -> {
+                var update = conn.prepare("UPDATE books SET reserved_by = NULL WHERE id = ? AND reserved_by IS NOT NULL");
+                update.setInt(1, bookId);
+
+                if (update.executeUpdate() == 0) {
+                    return Result.CONFLICT;
+                }
+
+                var close = conn.prepare("UPDATE reservation_records SET returned_at = CURRENT_TIMESTAMP WHERE book_id = ? AND returned_at IS NULL");
+                close.setInt(1, bookId);
+                close.executeUpdate();
+
+                return Result.SUCCESS;
+            });
         } catch (SQLException e) {
-            showError("An error occurred while creating a reservation record");
+            showError("An error occurred while returning a book");
             e.printStackTrace();
+            return Result.FAILED;
         }
     }
 
+    public static CompletableFuture<Result> reserveAsync(int bookId, int memberId) {
+        return DatabaseExecutor.supply(() -> reserve(bookId, memberId));
+    }
+
+    public static CompletableFuture<Result> returnBookAsync(int bookId) {
+        return DatabaseExecutor.supply(() -> returnBook(bookId));
+    }
+
+    private static ReservationRecord fromRow(ResultSet rs) throws SQLException {
+        return new ReservationRecord(
+            rs.getInt("id"),
+            rs.getInt("member_id"),
+            rs.getInt("book_id"),
+            rs.getTimestamp("reserved_at"),
+            rs.getTimestamp("returned_at")
+        );
+    }
+
     public static List<ReservationRecord> getAll() {
-        var conn = Database.getInstance().getConnection();
         var query = "SELECT * FROM reservation_records ORDER BY reserved_at DESC";
         var records = new ArrayList<ReservationRecord>();
 
-        try {
-            var stmt = conn.prepareStatement(query);
-            var rs = stmt.executeQuery();
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
 
-            while (rs.next()) {
-                records.add(new ReservationRecord(
-                    rs.getInt("id"),
-                    rs.getInt("member_id"),
-                    rs.getInt("book_id"),
-                    rs.getTimestamp("reserved_at"),
-                    rs.getTimestamp("returned_at")
-                ));
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(fromRow(rs));
+                }
             }
         } catch (SQLException e) {
             showError("An error occurred while fetching reservation records");
@@ -72,23 +145,17 @@ public class ReservationRecord {
     }
 
     public static List<ReservationRecord> getByBook(int bookId) {
-        var conn = Database.getInstance().getConnection();
         var query = "SELECT * FROM reservation_records WHERE book_id = ? ORDER BY reserved_at DESC";
         var records = new ArrayList<ReservationRecord>();
 
-        try {
-            var stmt = conn.prepareStatement(query);
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
             stmt.setInt(1, bookId);
 
-            var rs = stmt.executeQuery();
-            while (rs.next()) {
-                records.add(new ReservationRecord(
-                    rs.getInt("id"),
-                    rs.getInt("member_id"),
-                    rs.getInt("book_id"),
-                    rs.getTimestamp("reserved_at"),
-                    rs.getTimestamp("returned_at")
-                ));
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(fromRow(rs));
+                }
             }
         } catch (SQLException e) {
             showError("An error occurred while fetching reservation records by book");
@@ -98,24 +165,139 @@ public class ReservationRecord {
         return records;
     }
 
+    public static CompletableFuture<List<ReservationRecord>> getByBookAsync(int bookId) {
+        return DatabaseExecutor.supply(() -> getByBook(bookId));
+    }
+
+    /**
+     * One page of a book's reservation history with the member names joined in, newest first. Pass the last
+     * record of the previous page to continue after it, or null for the first page.
+     */
+    public static List<ReservationRecord> getHistoryPage(int bookId, ReservationRecord after, int limit) {
+        return after != null
+                ? getHistoryPageAfter(bookId, after.getReservedAtProperty().get(), after.getIdProperty().get(), limit)
+                : getHistoryPageAfter(bookId, null, 0, limit);
+    }
+
+    // Same as getHistoryPage, continuing after the record with the given reservation time and id
+    public static List<ReservationRecord> getHistoryPageAfter(int bookId, Timestamp reservedAt, int id, int limit) {
+        try (var conn = Database.getInstance().reader()) {
+            return getHistoryPageAfter(conn, bookId, reservedAt, id, limit);
+        } catch (SQLException e) {
+            showError("An error occurred while fetching reservation history");
+            e.printStackTrace();
+        }
+
+        return new ArrayList<>();
+    }
+
+    public static List<ReservationRecord> getHistoryPageAfter(PooledConnection conn, int bookId, Timestamp reservedAt, int id, int limit) throws SQLException {
+        // Separate statements so the planner can seek straight to the cursor in the book/reserved_at index
+        var query = HISTORY_PAGE_QUERY + (reservedAt != null ? "AND (r.reserved_at, r.id) < (?3, ?4) " : "")
+                + "ORDER BY r.reserved_at DESC, r.id DESC LIMIT ?2";
+        var records = new ArrayList<ReservationRecord>();
+
+        var stmt = conn.prepare(query);
+        stmt.setInt(1, bookId);
+        stmt.setInt(2, limit);
+
+        if (reservedAt != null) {
+            stmt.setTimestamp(3, reservedAt);
+            stmt.setInt(4, id);
+        }
+
+        try (var rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                var record = fromRow(rs);
+                var memberName = rs.getString("member_name");
+                record.memberNameProperty = new SimpleStringProperty(memberName != null ? memberName : "Unknown member");
+                records.add(record);
+            }
+        }
+
+        return records;
+    }
+
+    public static CompletableFuture<List<ReservationRecord>> getHistoryPageAsync(int bookId, ReservationRecord after, int limit) {
+        return DatabaseExecutor.supply(() -> getHistoryPage(bookId, after, limit));
+    }
+
+    // The open reservation of a book, or null if it isn't reserved
+    public static ReservationRecord findActiveForBook(int bookId) {
+        var query = "SELECT * FROM reservation_records WHERE book_id = ? AND returned_at IS NULL";
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
+            stmt.setInt(1, bookId);
+
+            try (var rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return fromRow(rs);
+                }
+            }
+        } catch (SQLException e) {
+            showError("An error occurred while fetching the active reservation");
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    public static CompletableFuture<ReservationRecord> findActiveForBookAsync(int bookId) {
+        return DatabaseExecutor.supply(() -> findActiveForBook(bookId));
+    }
+
+    // Every reservation that hasn't been returned yet, ordered by book
+    public static List<ReservationRecord> getActive() {
+        var query = "SELECT * FROM reservation_records WHERE returned_at IS NULL ORDER BY book_id";
+        var records = new ArrayList<ReservationRecord>();
+
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(fromRow(rs));
+                }
+            }
+        } catch (SQLException e) {
+            showError("An error occurred while fetching active reservations");
+            e.printStackTrace();
+        }
+
+        return records;
+    }
+
+    // One page of the reservations that haven't been returned yet, continuing after the given book id
+    public static List<ReservationRecord> getActivePage(PooledConnection conn, int afterBookId, int limit) throws SQLException {
+        var query = "SELECT * FROM reservation_records WHERE returned_at IS NULL AND book_id > ? ORDER BY book_id LIMIT ?";
+        var records = new ArrayList<ReservationRecord>();
+
+        var stmt = conn.prepare(query);
+        stmt.setInt(1, afterBookId);
+        stmt.setInt(2, limit);
+
+        try (var rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                records.add(fromRow(rs));
+            }
+        }
+
+        return records;
+    }
+
     public static List<ReservationRecord> getByMember(int memberId) {
-        var conn = Database.getInstance().getConnection();
         var query = "SELECT * FROM reservation_records WHERE member_id = ? ORDER BY reserved_at DESC";
         var records = new ArrayList<ReservationRecord>();
 
-        try {
-            var stmt = conn.prepareStatement(query);
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(query);
             stmt.setInt(1, memberId);
 
-            var rs = stmt.executeQuery();
-            while (rs.next()) {
-                records.add(new ReservationRecord(
-                    rs.getInt("id"),
-                    rs.getInt("member_id"),
-                    rs.getInt("book_id"),
-                    rs.getTimestamp("reserved_at"),
-                    rs.getTimestamp("returned_at")
-                ));
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    records.add(fromRow(rs));
+                }
             }
         } catch (SQLException e) {
             showError("An error occurred while fetching reservation records by member");
@@ -126,11 +308,10 @@ public class ReservationRecord {
     }
 
     public void markAsReturned() {
-        var conn = Database.getInstance().getConnection();
         var query = "UPDATE reservation_records SET returned_at = CURRENT_TIMESTAMP WHERE id = ?";
 
-        try {
-            var stmt = conn.prepareStatement(query);
+        try (var conn = Database.getInstance().writer()) {
+            var stmt = conn.prepare(query);
             stmt.setInt(1, idProperty.get());
 
             stmt.executeUpdate();
@@ -162,6 +343,15 @@ public class ReservationRecord {
         return returnedAtProperty;
     }
 
+    public StringProperty getMemberNameProperty() {
+        if (memberNameProperty == null) {
+            var member = getMember();
+            memberNameProperty = new SimpleStringProperty(member != null ? member.getFullNameProperty().get() : "Unknown member");
+        }
+
+        return memberNameProperty;
+    }
+
     // Convenience methods to get related objects
     public Member getMember() {
         return Member.findById(memberIdProperty.get());
@@ -1,16 +1,17 @@
 package com.booklibrary.booklibrary.dialogs;
 
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
 import com.booklibrary.booklibrary.datatypes.Book;
+import com.booklibrary.booklibrary.datatypes.BookRatingStats;
 import com.booklibrary.booklibrary.datatypes.BookReview;
 import com.booklibrary.booklibrary.datatypes.Member;
 import com.booklibrary.booklibrary.datatypes.ReservationRecord;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
@@ -21,22 +22,34 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.Date;
 
+import static com.booklibrary.booklibrary.utils.Utils.onFxThread;
+
 public class BookManagementDialog extends Dialog<BookReview> {
     private static final String STAR = "★";
     private static final String EMPTY_STAR = "☆";
-    private final VBox reviewsContainer = new VBox(10);
+    private static final int REVIEWS_PAGE_SIZE = 50;
+    private static final int HISTORY_PAGE_SIZE = 50;
     private final TextArea newReviewText = new TextArea();
     private final ComboBox<Integer> starRatingPicker = new ComboBox<>();
-    private final ComboBox<Member> memberPicker = new ComboBox<>();
-    private final ComboBox<Member> reservationMemberPicker = new ComboBox<>();
-    private final ObservableList<BookReview> reviews = FXCollections.observableArrayList();
+    private final ComboBox<Member> memberPicker = new TypeAheadComboBox<>(Member::searchByNameAsync, Member::toString);
+    private final ComboBox<Member> reservationMemberPicker = new TypeAheadComboBox<>(Member::searchByNameAsync, Member::toString);
+    private final Label averageRatingLabel = new Label();
+    private final Label averageStarsLabel = new Label();
+    private final IncrementalListView<BookReview> reviewsList;
+    private final IncrementalListView<ReservationRecord> historyList;
     private Book book;
     private Label reservationStatus;
 
     public BookManagementDialog(Stage owner, Book book) {
         this.book = book;
-
-        setTitle(book.getTitleProperty().get() + " by " + book.getAuthor().getFullNameProperty().get());
+        this.reviewsList = new IncrementalListView<>(REVIEWS_PAGE_SIZE,
+                after -> BookReview.getPageForBookAsync(this.book.getIdProperty().get(), after, REVIEWS_PAGE_SIZE),
+                this::createReviewBox, "No reviews yet");
+        this.historyList = new IncrementalListView<>(HISTORY_PAGE_SIZE,
+                after -> ReservationRecord.getHistoryPageAsync(this.book.getIdProperty().get(), after, HISTORY_PAGE_SIZE),
+                this::createHistoryEntry, "No reservation history");
+
+        setTitle(book.getTitleProperty().get() + " by " + book.getAuthorNameProperty().get());
         setHeaderText(null);
 
         DialogPane dialogPane = getDialogPane();
@@ -80,10 +93,9 @@ public class BookManagementDialog extends Dialog<BookReview> {
         HBox averageRatingBox = createAverageRatingDisplay();
         mainLayout.getChildren().add(averageRatingBox);
 
-        ScrollPane scrollPane = new ScrollPane(reviewsContainer);
-        scrollPane.setFitToWidth(true);
-        scrollPane.setPrefViewportHeight(300);
-        mainLayout.getChildren().add(scrollPane);
+        reviewsList.setPrefHeight(300);
+        VBox.setVgrow(reviewsList, Priority.ALWAYS);
+        mainLayout.getChildren().add(reviewsList);
 
         VBox newReviewSection = createNewReviewSection();
         mainLayout.getChildren().add(newReviewSection);
@@ -103,9 +115,16 @@ public class BookManagementDialog extends Dialog<BookReview> {
         statusLabel.getStyleClass().add("section-title");
 
         reservationStatus = new Label();
-        var reservedBy = book.getReservedByMember();
+        var reservedBy = book.getReservedByNameProperty().get();
         if (reservedBy != null) {
-            reservationStatus.setText("Reserved by: " + reservedBy.getFullNameProperty().get());
+            reservationStatus.setText("Reserved by: " + reservedBy);
+
+            var status = reservationStatus;
+            onFxThread(ReservationRecord.findActiveForBookAsync(book.getIdProperty().get()), active -> {
+                if (active != null) {
+                    status.setText("Reserved by: " + reservedBy + "\nSince: " + formatDateTime(Date.from(active.getReservedAtProperty().get().toInstant())));
+                }
+            });
         } else {
             reservationStatus.setText("Not currently reserved");
         }
@@ -117,7 +136,7 @@ public class BookManagementDialog extends Dialog<BookReview> {
         controlsBox.setAlignment(Pos.CENTER);
 
         Label memberLabel = new Label("Select Member");
-        reservationMemberPicker.setPromptText("Choose member");
+        reservationMemberPicker.setPromptText("Type a member name");
         reservationMemberPicker.setPrefWidth(200);
 
         Button reserveButton = new Button("Reserve Book");
@@ -140,78 +159,86 @@ public class BookManagementDialog extends Dialog<BookReview> {
             return;
         }
 
-        if (book.getReservedByMember() != null) {
-            showAlert("This book is already reserved.");
-            return;
-        }
-
-        // Update the book's reservation
-        book.reserve(selectedMember.getIdProperty().get());
+        var reservation = ReservationRecord.reserveAsync(book.getIdProperty().get(), selectedMember.getIdProperty().get());
 
-        // Log the reservation in reservation_records
-        ReservationRecord.create(
-                selectedMember.getIdProperty().get(),
-                book.getIdProperty().get(),
-                new java.sql.Timestamp(System.currentTimeMillis())
-        );
+        onFxThread(reservation, result -> {
+            if (result == ReservationRecord.Result.CONFLICT) {
+                showAlert("This book is already reserved.");
+            } else if (result == ReservationRecord.Result.SUCCESS) {
+                reservationMemberPicker.setValue(null);
+            }
 
-        // Reset the member picker and refresh the dialog
-        reservationMemberPicker.setValue(null);
-        updateReservationStatus();
+            // Refresh the dialog; after a conflict it shows who holds the book now
+            updateReservationStatus();
+        });
     }
 
     private void removeReservation() {
-        if (book.getReservedByMember() == null) {
-            showAlert("This book is not currently reserved.");
-            return;
-        }
+        var removal = ReservationRecord.returnBookAsync(book.getIdProperty().get());
 
-        // Find the active reservation record and mark it as returned
-        var records = ReservationRecord.getByBook(book.getIdProperty().get());
-        for (ReservationRecord record : records) {
-            if (!record.isReturned()) {
-                record.markAsReturned();
-                break;
+        onFxThread(removal, result -> {
+            if (result == ReservationRecord.Result.CONFLICT) {
+                showAlert("This book is not currently reserved.");
+            } else if (result == ReservationRecord.Result.SUCCESS) {
+                reservationStatus.setText("Not currently reserved");
             }
-        }
-
-        // Remove the reservation
-        book.reserve(null);
-        reservationStatus.setText("Not currently reserved");
 
-        updateReservationStatus();
+            updateReservationStatus();
+        });
     }
 
     private void updateReservationStatus() {
-        this.book = Book.findById(book.getIdProperty().get());
-        // Refresh the dialog to show updated reservation status
-        DialogPane dialogPane = getDialogPane();
-        TabPane tabPane = (TabPane) dialogPane.getContent();
+        var reloaded = DatabaseExecutor.supply(() -> {
+            var fresh = Book.findById(book.getIdProperty().get());
+            if (fresh != null) {
+                // Resolve the reserver name here rather than on the FX thread
+                fresh.getReservedByNameProperty();
+            }
+            return fresh;
+        });
+
+        onFxThread(reloaded, fresh -> {
+            // Deleted elsewhere, or the lookup failed and has been reported already
+            if (fresh == null) {
+                showAlert("The book could not be loaded, it may have been deleted.");
+                close();
+                return;
+            }
 
-        // Update reservations tab
-        Tab reservationsTab = tabPane.getTabs().get(1);
-        reservationsTab.setContent(createReservationsContent());
+            this.book = fresh;
+            // Refresh the dialog to show updated reservation status
+            DialogPane dialogPane = getDialogPane();
+            TabPane tabPane = (TabPane) dialogPane.getContent();
 
-        // Update history tab
-        Tab historyTab = tabPane.getTabs().get(2);
-        historyTab.setContent(createReservationHistoryContent());
+            // Update reservations tab
+            Tab reservationsTab = tabPane.getTabs().get(1);
+            reservationsTab.setContent(createReservationsContent());
+
+            // The history list stays, it only reloads its first page
+            historyList.reload();
+        });
     }
 
     private HBox createAverageRatingDisplay() {
         HBox container = new HBox(10);
         container.setAlignment(Pos.CENTER);
 
-        double averageRating = calculateAverageRating();
-        String ratingText = reviews.isEmpty() ? "No ratings yet" : String.format("%.1f/5.0 (%d reviews)", averageRating, reviews.size());
+        averageRatingLabel.setText("Loading ratings...");
+        averageRatingLabel.getStyleClass().add("average-rating-label");
+        averageStarsLabel.getStyleClass().add("stars-label");
 
-        Label ratingLabel = new Label(ratingText);
-        ratingLabel.getStyleClass().add("average-rating-label");
+        container.getChildren().addAll(averageRatingLabel, averageStarsLabel);
+        return container;
+    }
 
-        Label starsLabel = new Label(getStarDisplay((int) Math.round(averageRating)));
-        starsLabel.getStyleClass().add("stars-label");
+    private void updateAverageRatingDisplay() {
+        onFxThread(BookRatingStats.forBookAsync(book.getIdProperty().get()), stats -> {
+            double averageRating = stats.getAverage();
+            String ratingText = stats.getReviewCount() == 0 ? "No ratings yet" : String.format("%.1f/5.0 (%d reviews)", averageRating, stats.getReviewCount());
 
-        container.getChildren().addAll(ratingLabel, starsLabel);
-        return container;
+            averageRatingLabel.setText(ratingText);
+            averageStarsLabel.setText(getStarDisplay((int) Math.round(averageRating)));
+        });
     }
 
     private VBox createNewReviewSection() {
@@ -244,28 +271,14 @@ public class BookManagementDialog extends Dialog<BookReview> {
     }
 
     private void loadReviews() {
-        reviews.clear();
-        reviews.addAll(BookReview.getReviewsForBook(book));
-        reviewsContainer.getChildren().clear();
-
-        if (reviews.isEmpty()) {
-            Label noReviewsLabel = new Label("No reviews yet");
-            noReviewsLabel.getStyleClass().add("no-reviews-label");
-            reviewsContainer.getChildren().add(noReviewsLabel);
-            return;
-        }
-
-        for (BookReview review : reviews) {
-            VBox reviewBox = createReviewBox(review);
-            reviewsContainer.getChildren().add(reviewBox);
-        }
+        reviewsList.reload();
+        updateAverageRatingDisplay();
     }
 
+    // The pickers look members up as the user types; warm the name index so the first keystroke is fast
     private void loadMembers() {
-        ObservableList<Member> members = FXCollections.observableArrayList();
-        members.addAll(Member.getMembers());
-        memberPicker.setItems(members);
-        reservationMemberPicker.setItems(members);
+        memberPicker.setPromptText("Type a member name");
+        DatabaseExecutor.run(() -> Member.getNameIndex().load());
     }
 
     private VBox createReviewBox(BookReview review) {
@@ -274,7 +287,8 @@ public class BookManagementDialog extends Dialog<BookReview> {
         container.setPadding(new Insets(10));
 
         HBox header = new HBox(10);
-        Label memberLabel = new Label(review.getMemberIdProperty().getValue().toString());
+        var memberName = review.getMemberNameProperty().get();
+        Label memberLabel = new Label(memberName != null ? memberName : review.getMemberIdProperty().getValue().toString());
         memberLabel.getStyleClass().add("member-name-label");
         Label starsLabel = new Label(getStarDisplay(review.getRatingProperty().get()));
         Label dateLabel = new Label(formatDateTime(Date.from(Instant.now())));
@@ -296,55 +310,44 @@ public class BookManagementDialog extends Dialog<BookReview> {
         Label historyLabel = new Label("Reservation History");
         historyLabel.getStyleClass().add("section-title");
 
-        // Create scrollable container for history entries
-        VBox historyContainer = new VBox(10);
-        ScrollPane scrollPane = new ScrollPane(historyContainer);
-        scrollPane.setFitToWidth(true);
-        scrollPane.setPrefViewportHeight(300);
+        historyList.setPrefHeight(300);
+        VBox.setVgrow(historyList, Priority.ALWAYS);
+        historyList.reload();
 
-        // Load and display reservation history
-        var records = ReservationRecord.getByBook(book.getIdProperty().get());
+        container.getChildren().addAll(historyLabel, historyList);
+        return container;
+    }
 
-        if (records.isEmpty()) {
-            Label noHistoryLabel = new Label("No reservation history");
-            noHistoryLabel.getStyleClass().add("no-reviews-label");
-            historyContainer.getChildren().add(noHistoryLabel);
-        } else {
-            for (ReservationRecord record : records) {
-                VBox recordBox = new VBox(5);
-                recordBox.getStyleClass().add("review-box");
-                recordBox.setPadding(new Insets(10));
-
-                // Member name and reservation date
-                HBox header = new HBox(10);
-                Label memberLabel = new Label(record.getMember().getFullNameProperty().get());
-                memberLabel.getStyleClass().add("member-name-label");
-
-                // Format and display dates
-                String reservedDate = formatDateTime(Date.from(record.getReservedAtProperty().get().toInstant()));
-                Label reservedLabel = new Label("Reserved: " + reservedDate);
-
-                header.getChildren().addAll(memberLabel);
-
-                // Create status box
-                HBox statusBox = new HBox(10);
-                if (record.isReturned()) {
-                    String returnedDate = formatDateTime(Date.from(record.getReturnedAtProperty().get().toInstant()));
-                    Label returnedLabel = new Label("Returned: " + returnedDate);
-                    statusBox.getChildren().add(returnedLabel);
-                } else {
-                    Label activeLabel = new Label("Currently Reserved");
-                    activeLabel.setStyle("-fx-text-fill: #2196F3;"); // Blue color for active reservations
-                    statusBox.getChildren().add(activeLabel);
-                }
+    private VBox createHistoryEntry(ReservationRecord record) {
+        VBox recordBox = new VBox(5);
+        recordBox.getStyleClass().add("review-box");
+        recordBox.setPadding(new Insets(10));
 
-                recordBox.getChildren().addAll(header, reservedLabel, statusBox);
-                historyContainer.getChildren().add(recordBox);
-            }
+        // Member name and reservation date
+        HBox header = new HBox(10);
+        Label memberLabel = new Label(record.getMemberNameProperty().get());
+        memberLabel.getStyleClass().add("member-name-label");
+
+        // Format and display dates
+        String reservedDate = formatDateTime(Date.from(record.getReservedAtProperty().get().toInstant()));
+        Label reservedLabel = new Label("Reserved: " + reservedDate);
+
+        header.getChildren().addAll(memberLabel);
+
+        // Create status box
+        HBox statusBox = new HBox(10);
+        if (record.isReturned()) {
+            String returnedDate = formatDateTime(Date.from(record.getReturnedAtProperty().get().toInstant()));
+            Label returnedLabel = new Label("Returned: " + returnedDate);
+            statusBox.getChildren().add(returnedLabel);
+        } else {
+            Label activeLabel = new Label("Currently Reserved");
+            activeLabel.setStyle("-fx-text-fill: #2196F3;"); // Blue color for active reservations
+            statusBox.getChildren().add(activeLabel);
         }
 
-        container.getChildren().addAll(historyLabel, scrollPane);
-        return container;
+        recordBox.getChildren().addAll(header, reservedLabel, statusBox);
+        return recordBox;
     }
 
     private void submitReview() {
@@ -357,14 +360,23 @@ public class BookManagementDialog extends Dialog<BookReview> {
             return;
         }
 
-        BookReview.create(member.getIdProperty().get(), book.getIdProperty().get(), text, rating);
-        loadReviews();
+        var created = DatabaseExecutor.supply(() -> BookReview.create(member.getIdProperty().get(), book.getIdProperty().get(), text, rating));
 
         newReviewText.clear();
         starRatingPicker.setValue(null);
         memberPicker.setValue(null);
 
-        loadReviews();
+        onFxThread(created, review -> {
+            if (review == null) {
+                showAlert("The review could not be saved.");
+                return;
+            }
+
+            // Only the new review is added, the loaded pages stay as they are
+            review.getMemberNameProperty().set(member.getFullNameProperty().get());
+            reviewsList.prepend(review);
+            updateAverageRatingDisplay();
+        });
     }
 
     private String getStarDisplay(int rating) {
@@ -375,17 +387,6 @@ public class BookManagementDialog extends Dialog<BookReview> {
         return stars.toString();
     }
 
-    private double calculateAverageRating() {
-        if (reviews.isEmpty()) {
-            loadReviews();
-
-            if (reviews.isEmpty()) {
-                return 0.0;
-            }
-        }
-        return reviews.stream().mapToInt(r -> r.getRatingProperty().get()).average().orElse(0.0);
-    }
-
     private String formatDateTime(Date dateTime) {
         return dateTime.toString();
     }
@@ -1,20 +1,19 @@
 package com.booklibrary.booklibrary.dialogs;
 
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
 import com.booklibrary.booklibrary.datatypes.Author;
 import com.booklibrary.booklibrary.datatypes.Book;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
 import javafx.stage.Stage;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import java.time.Year;
 
 import static com.booklibrary.booklibrary.utils.Utils.showError;
 
 public class CreateBookDialog extends Dialog<Book> {
     private final TextField titleField = new TextField();
-    private final ComboBox<Author> authorComboBox = new ComboBox<>();
+    private final ComboBox<Author> authorComboBox = new TypeAheadComboBox<>(Author::searchByNameAsync, Author::toString);
     private final TextField genreField = new TextField();
     private final Spinner<Integer> yearSpinner;
 
@@ -77,25 +76,10 @@ public class CreateBookDialog extends Dialog<Book> {
         });
     }
 
-    // This method should be implemented to load authors from your data source
+    // Authors are looked up as the user types; warm the name index so the first keystroke is fast
     private void loadAuthors() {
-        // TODO: Replace with actual author loading logic
-        ObservableList<Author> authors = FXCollections.observableArrayList(Author.getAuthors());
-        // Add authors to the list
-        authorComboBox.setItems(authors);
-        authorComboBox.setCellFactory(param -> new ListCell<>() {
-            @Override
-            protected void updateItem(Author author, boolean empty) {
-                super.updateItem(author, empty);
-                if (empty || author == null) {
-                    setText(null);
-                    setHeaderText(null);
-                } else {
-                    setText(author.getFullNameProperty().get());
-                }
-            }
-        });
-
+        authorComboBox.setPromptText("Type an author name");
+        DatabaseExecutor.run(() -> Author.getNameIndex().load());
     }
 
     // Getter methods for form fields
@@ -0,0 +1,104 @@
+package com.booklibrary.booklibrary.dialogs;
+
+import com.booklibrary.booklibrary.database.DatabaseExecutor;
+import com.booklibrary.booklibrary.importer.CatalogImporter;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs a catalog import in the background and shows its progress, throughput and the rows that failed.
+ */
+public class ImportDialog extends Dialog<Void> {
+    private final ProgressBar progressBar = new ProgressBar(0);
+    private final Label statusLabel = new Label("Starting import...");
+    private final TextArea errorsArea = new TextArea();
+    private final CompletableFuture<CatalogImporter.Result> result;
+
+    public ImportDialog(Stage owner, CatalogImporter.Kind kind, Path file) {
+        initOwner(owner);
+        setTitle("Import " + kind.name().toLowerCase());
+        setHeaderText("Importing " + file.getFileName());
+
+        progressBar.setPrefWidth(400);
+        errorsArea.setEditable(false);
+        errorsArea.setPrefRowCount(8);
+        errorsArea.setVisible(false);
+        errorsArea.setManaged(false);
+
+        var content = new VBox(10, progressBar, statusLabel, errorsArea);
+        content.setPadding(new Insets(20));
+        getDialogPane().setContent(content);
+        getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        // Closing doesn't stop the import, the button only unlocks once it is done
+        getDialogPane().lookupButton(ButtonType.CLOSE).setDisable(true);
+
+        var importer = new CatalogImporter(kind, progress -> Platform.runLater(() -> showProgress(progress)));
+        result = DatabaseExecutor.supplyLongRunning("catalog-import", () -> {
+            try {
+                return importer.run(file);
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        });
+
+        result.whenComplete((done, error) -> Platform.runLater(() -> {
+            getDialogPane().lookupButton(ButtonType.CLOSE).setDisable(false);
+
+            if (error != null) {
+                var cause = error.getCause() != null ? error.getCause() : error;
+                statusLabel.setText("Import failed: " + cause.getMessage());
+                error.printStackTrace();
+                return;
+            }
+
+            showResult(done);
+        }));
+    }
+
+    // Completes with the result once the import has finished
+    public CompletableFuture<CatalogImporter.Result> getImportResult() {
+        return result;
+    }
+
+    private void showProgress(CatalogImporter.Progress progress) {
+        progressBar.setProgress(progress.fraction());
+        statusLabel.setText(String.format("%,d rows read, %,d imported, %,d skipped, %,d failed (%,.0f rows/s)",
+                progress.rowsRead(), progress.imported(), progress.skipped(), progress.failed(), progress.rowsPerSecond()));
+    }
+
+    private void showResult(CatalogImporter.Result done) {
+        showProgress(done.progress());
+        progressBar.setProgress(1);
+
+        var seconds = done.progress().elapsedNanos() / 1e9;
+        statusLabel.setText(statusLabel.getText() + String.format("%nFinished in %.1f s", seconds)
+                + (done.authorsCreated() > 0 ? String.format(", %,d new authors created", done.authorsCreated()) : "")
+                + (done.isComplete() ? "" : "\nStopped early, the rest of the file could not be read: " + done.abortReason()));
+
+        if (!done.errors().isEmpty()) {
+            var text = new StringBuilder();
+            for (var error : done.errors()) {
+                text.append("Line ").append(error.line()).append(": ").append(error.message()).append('\n');
+            }
+            if (done.progress().failed() > done.errors().size()) {
+                text.append("... and ").append(done.progress().failed() - done.errors().size()).append(" more");
+            }
+
+            errorsArea.setText(text.toString());
+            errorsArea.setVisible(true);
+            errorsArea.setManaged(true);
+            getDialogPane().getScene().getWindow().sizeToScene();
+        }
+    }
+}
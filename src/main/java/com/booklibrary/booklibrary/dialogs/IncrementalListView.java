@@ -0,0 +1,105 @@
+package com.booklibrary.booklibrary.dialogs;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static com.booklibrary.booklibrary.utils.Utils.showError;
+
+/**
+ * List view that loads its rows a page at a time. The first page is loaded by {@link #reload()}; the next
+ * one is requested as soon as a cell near the end of the loaded rows is shown, so scrolling down keeps
+ * loading until a short page signals the end. The page loader gets the last loaded row (null for the first
+ * page) to continue after, which suits keyset queries. Only visible rows get cells and nodes.
+ */
+public class IncrementalListView<T> extends ListView<T> {
+    private final int pageSize;
+    private final Function<T, CompletableFuture<List<T>>> loadAfter;
+    private final String emptyText;
+
+    private boolean loading;
+    private boolean exhausted;
+    private int generation;
+
+    public IncrementalListView(int pageSize, Function<T, CompletableFuture<List<T>>> loadAfter, Function<T, Node> render, String emptyText) {
+        this.pageSize = pageSize;
+        this.loadAfter = loadAfter;
+        this.emptyText = emptyText;
+
+        setCellFactory(view -> new ListCell<>() {
+            {
+                // Lets the content wrap to the list width instead of scrolling sideways
+                setPrefWidth(0);
+            }
+
+            @Override
+            protected void updateItem(T item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(null);
+                setGraphic(empty || item == null ? null : render.apply(item));
+
+                if (!empty && getIndex() >= getItems().size() - pageSize / 4) {
+                    loadMore();
+                }
+            }
+        });
+    }
+
+    // Drops the loaded rows and loads the first page again
+    public void reload() {
+        generation++;
+        loading = false;
+        exhausted = false;
+        getItems().clear();
+        setPlaceholder(new Label("Loading..."));
+        loadMore();
+    }
+
+    // Shows a row that was just created in front of the loaded ones
+    public void prepend(T item) {
+        getItems().add(0, item);
+        scrollTo(0);
+    }
+
+    private void loadMore() {
+        if (loading || exhausted) {
+            return;
+        }
+
+        loading = true;
+        var requested = generation;
+        var last = getItems().isEmpty() ? null : getItems().get(getItems().size() - 1);
+
+        loadAfter.apply(last).whenComplete((page, error) -> Platform.runLater(() -> {
+            // A reload happened meanwhile, this page belongs to the old rows
+            if (requested != generation) {
+                return;
+            }
+
+            // Cleared on failure too, so the next scroll tries the page again
+            loading = false;
+
+            if (error != null) {
+                showError("An error occurred while loading data");
+                error.printStackTrace();
+                if (getItems().isEmpty()) {
+                    setPlaceholder(new Label("Could not be loaded"));
+                }
+                return;
+            }
+
+            exhausted = page.size() < pageSize;
+            getItems().addAll(page);
+
+            if (getItems().isEmpty()) {
+                setPlaceholder(new Label(emptyText));
+            }
+        }));
+    }
+}
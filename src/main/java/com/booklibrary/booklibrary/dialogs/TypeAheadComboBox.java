@@ -0,0 +1,108 @@
+package com.booklibrary.booklibrary.dialogs;
+
+import javafx.scene.control.ComboBox;
+import javafx.util.StringConverter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static com.booklibrary.booklibrary.utils.Utils.onFxThread;
+
+/**
+ * Editable combo box that looks up matches for the typed text instead of holding every row. Only the
+ * latest lookup is shown, results of older keystrokes are dropped.
+ */
+public class TypeAheadComboBox<T> extends ComboBox<T> {
+    private static final int MAX_SUGGESTIONS = 20;
+
+    private final BiFunction<String, Integer, CompletableFuture<List<T>>> lookup;
+    private final Function<T, String> nameOf;
+    private CompletableFuture<List<T>> pendingLookup;
+    private boolean updatingItems;
+
+    public TypeAheadComboBox(BiFunction<String, Integer, CompletableFuture<List<T>>> lookup, Function<T, String> nameOf) {
+        this.lookup = lookup;
+        this.nameOf = nameOf;
+
+        setEditable(true);
+        setConverter(new StringConverter<>() {
+            @Override
+            public String toString(T item) {
+                return item == null ? "" : nameOf.apply(item);
+            }
+
+            @Override
+            public T fromString(String text) {
+                return findByName(text);
+            }
+        });
+
+        getEditor().textProperty().addListener((observable, oldText, newText) -> {
+            if (updatingItems) {
+                return;
+            }
+
+            var value = getValue();
+            if (value != null && nameOf.apply(value).equals(newText)) {
+                return;
+            }
+
+            suggest(newText);
+        });
+    }
+
+    private void suggest(String text) {
+        if (text == null || text.isBlank()) {
+            pendingLookup = null;
+            getItems().clear();
+            hide();
+            return;
+        }
+
+        var request = lookup.apply(text, MAX_SUGGESTIONS);
+        pendingLookup = request;
+
+        onFxThread(request, matches -> {
+            if (pendingLookup != request) {
+                return;
+            }
+
+            // Replacing the items may reset the editor, keep what the user is typing
+            var editor = getEditor();
+            var typed = editor.getText();
+            var caret = editor.getCaretPosition();
+
+            updatingItems = true;
+            try {
+                getItems().setAll(matches);
+
+                if (!typed.equals(editor.getText())) {
+                    editor.setText(typed);
+                    editor.positionCaret(caret);
+                }
+            } finally {
+                updatingItems = false;
+            }
+
+            if (matches.isEmpty()) {
+                hide();
+            } else if (editor.isFocused()) {
+                show();
+            }
+        });
+    }
+
+    private T findByName(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+
+        var name = text.strip();
+        return getItems().stream()
+                .filter(item -> nameOf.apply(item).equalsIgnoreCase(name))
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -0,0 +1,299 @@
+package com.booklibrary.booklibrary.exporter;
+
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.utils.JsonStrings;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams books, reviews or reservation records to a CSV or JSON Lines file.
+ * <p>
+ * Rows are read from a forward-only result set and encoded straight into a fixed-size buffer that is
+ * flushed to a file channel, optionally through gzip, so memory use doesn't depend on the table size.
+ * The whole export reads from one snapshot of the database; writes made meanwhile are not included.
+ */
+public final class CatalogExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum Kind {
+        BOOKS("""
+                SELECT b.id, b.title, b.author_id, a.full_name AS author_name, b.genre, b.year, b.reserved_by
+                FROM books b
+                LEFT JOIN authors a ON a.id = b.author_id
+                ORDER BY b.id"""),
+        REVIEWS("SELECT id, book_id, member_id, rating, text FROM reviews ORDER BY id"),
+        RESERVATIONS("SELECT id, book_id, member_id, " + isoTimestamp("reserved_at") + " AS reserved_at, "
+                + isoTimestamp("returned_at") + " AS returned_at FROM reservation_records ORDER BY id");
+
+        private final String query;
+
+        Kind(String query) {
+            this.query = query;
+        }
+
+        public static Kind parse(String name) {
+            return valueOf(name.strip().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public enum Format {
+        CSV, JSON_LINES;
+
+        // Picks the format from the file name; a trailing .gz is ignored
+        public static Format of(Path file) {
+            var name = file.getFileName().toString().toLowerCase(Locale.ROOT).replaceFirst("\\.gz$", "");
+
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+                return JSON_LINES;
+            }
+
+            throw new IllegalArgumentException("Unsupported file type, expected .csv or .jsonl (optionally .gz): " + file.getFileName());
+        }
+    }
+
+    public record Result(long rows, long bytes, long elapsedNanos) {
+    }
+
+    private final Kind kind;
+    private final Format format;
+    private final boolean gzip;
+
+    public CatalogExporter(Kind kind, Format format, boolean gzip) {
+        this.kind = kind;
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    // Chooses the format from the file name and compresses if it ends in .gz
+    public static CatalogExporter forFile(Kind kind, Path file) {
+        var gzip = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+        return new CatalogExporter(kind, Format.of(file), gzip);
+    }
+
+    public Result run(Path file) throws IOException, SQLException {
+        var start = System.nanoTime();
+
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        WritableByteChannel out = channel;
+
+        if (gzip) {
+            try {
+                out = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        var rows = export(out);
+
+        return new Result(rows, Files.size(file), System.nanoTime() - start);
+    }
+
+    /**
+     * Writes the export to the channel and returns the number of rows. The channel is closed afterwards,
+     * also when the export fails.
+     */
+    public long export(WritableByteChannel channel) throws IOException, SQLException {
+        try (var out = new ChannelWriter(channel); var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare(kind.query);
+
+            try (var rs = stmt.executeQuery()) {
+                var columns = rs.getMetaData().getColumnCount();
+                var names = new String[columns];
+
+                for (int i = 0; i < columns; i++) {
+                    names[i] = rs.getMetaData().getColumnLabel(i + 1);
+                }
+
+                if (format == Format.CSV) {
+                    writeCsvRow(out, names);
+                }
+
+                var values = new String[columns];
+                var numeric = new boolean[columns];
+                var rows = 0L;
+
+                while (rs.next()) {
+                    // SQLite types are per value, so whether to quote a JSON value is decided row by row
+                    for (int i = 0; i < columns; i++) {
+                        var value = rs.getObject(i + 1);
+                        values[i] = value == null ? null : value.toString();
+                        numeric[i] = value instanceof Number;
+                    }
+
+                    if (format == Format.CSV) {
+                        writeCsvRow(out, values);
+                    } else {
+                        writeJsonRow(out, names, values, numeric);
+                    }
+                    rows++;
+                }
+
+                return rows;
+            }
+        }
+    }
+
+    private static void writeCsvRow(ChannelWriter out, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+
+            var value = values[i];
+            if (value == null) {
+                continue;
+            }
+
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                out.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(value);
+            }
+        }
+
+        out.append('\n');
+    }
+
+    private static void writeJsonRow(ChannelWriter out, String[] names, String[] values, boolean[] numeric) throws IOException {
+        out.append('{');
+
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+
+            JsonStrings.append(out, names[i]);
+            out.append(':');
+
+            if (values[i] == null) {
+                out.append("null");
+            } else if (numeric[i]) {
+                out.append(values[i]);
+            } else {
+                JsonStrings.append(out, values[i]);
+            }
+        }
+
+        out.append("}\n");
+    }
+
+    // Reservation times are stored both as epoch milliseconds and as SQLite date strings
+    private static String isoTimestamp(String column) {
+        return "CASE typeof(" + column + ") "
+                + "WHEN 'integer' THEN strftime('%Y-%m-%dT%H:%M:%SZ', " + column + " / 1000, 'unixepoch') "
+                + "WHEN 'text' THEN strftime('%Y-%m-%dT%H:%M:%SZ', " + column + ") END";
+    }
+
+    /**
+     * Encodes characters to UTF-8 into a fixed buffer and writes it to the channel whenever it fills up.
+     */
+    private static final class ChannelWriter implements Appendable, AutoCloseable {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE / 4);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public ChannelWriter append(char c) throws IOException {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+
+            chars.put(c);
+            return this;
+        }
+
+        @Override
+        public ChannelWriter append(CharSequence s) throws IOException {
+            return append(s, 0, s.length());
+        }
+
+        @Override
+        public ChannelWriter append(CharSequence s, int start, int end) throws IOException {
+            for (int i = start; i < end; ) {
+                if (!chars.hasRemaining()) {
+                    encode(false);
+                }
+
+                var n = Math.min(chars.remaining(), end - i);
+                if (s instanceof String string) {
+                    chars.put(string, i, i + n);
+                } else {
+                    chars.append(s, i, i + n);
+                }
+                i += n;
+            }
+
+            return this;
+        }
+
+        // Moves the pending characters into the byte buffer, writing it out whenever it is full
+        private void encode(boolean endOfInput) throws IOException {
+            chars.flip();
+
+            while (true) {
+                var result = encoder.encode(chars, bytes, endOfInput);
+                if (result.isOverflow()) {
+                    writeBytes();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+
+            // A surrogate pair split at the buffer end stays for the next round
+            chars.compact();
+        }
+
+        private void writeBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                encode(true);
+
+                CoderResult result;
+                while ((result = encoder.flush(bytes)).isOverflow()) {
+                    writeBytes();
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+
+                writeBytes();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
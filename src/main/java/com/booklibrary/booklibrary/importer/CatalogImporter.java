@@ -0,0 +1,454 @@
+package com.booklibrary.booklibrary.importer;
+
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.PooledConnection;
+import com.booklibrary.booklibrary.datatypes.Author;
+import com.booklibrary.booklibrary.datatypes.Member;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Streams authors, members or books from a CSV or JSON file into the database.
+ * <p>
+ * Rows are validated as they are read and written in chunks: each chunk is one transaction with a single
+ * batched insert, so a large file costs a few hundred commits instead of one per row. Books refer to their
+ * author by name (or id); names are resolved through a map loaded once, and unknown authors are created.
+ * Invalid rows are skipped and reported instead of aborting the import. If a chunk fails to insert, it is
+ * retried row by row to single out the rows that caused it.
+ */
+public final class CatalogImporter {
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+    private static final int MAX_REPORTED_ERRORS = 1_000;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    public enum Kind {
+        AUTHORS("INSERT INTO authors (full_name) VALUES (?)"),
+        MEMBERS("INSERT INTO members (full_name) VALUES (?)"),
+        BOOKS("INSERT INTO books (title, author_id, genre, year) VALUES (?, ?, ?, ?)");
+
+        private final String insert;
+
+        Kind(String insert) {
+            this.insert = insert;
+        }
+
+        public static Kind parse(String name) {
+            return valueOf(name.strip().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public record Progress(long rowsRead, long imported, long skipped, long failed, long bytesRead, long totalBytes, long elapsedNanos) {
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead * 1e9 / elapsedNanos;
+        }
+
+        // Share of the file read so far, between 0 and 1
+        public double fraction() {
+            return totalBytes <= 0 ? 0 : Math.min(1.0, (double) bytesRead / totalBytes);
+        }
+    }
+
+    public record RowError(long line, String message) {
+    }
+
+    /**
+     * Outcome of an import. Only the first {@value #MAX_REPORTED_ERRORS} row errors are kept; the failed
+     * count in the progress covers all of them. When the file turned out to be malformed part way through,
+     * abortReason says why reading stopped; the rows before that point are imported and counted.
+     */
+    public record Result(Progress progress, List<RowError> errors, int authorsCreated, String abortReason) {
+        public boolean isComplete() {
+            return abortReason == null;
+        }
+    }
+
+    // A validated row waiting for its chunk to be written
+    private record PendingRow(long line, String name, String title, String genre, int year, Integer authorId) {
+    }
+
+    private final Kind kind;
+    private final int chunkSize;
+    private final Consumer<Progress> listener;
+
+    // Lower-cased author name to id; -1 for authors inserted by this import whose id isn't needed
+    private final Map<String, Integer> authorIds = new HashMap<>();
+    // Every author id in the database, explicit author_id values of books must be one of them
+    private final Set<Integer> knownAuthorIds = new HashSet<>();
+    private final List<RowError> errors = new ArrayList<>();
+    private long rowsRead;
+    private long imported;
+    private long skipped;
+    private long failed;
+    private int authorsCreated;
+    private long startedAt;
+    private long lastReportAt;
+    private CountingInputStream input;
+    private long totalBytes;
+
+    public CatalogImporter(Kind kind, int chunkSize, Consumer<Progress> listener) {
+        this.kind = kind;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.listener = listener;
+    }
+
+    public CatalogImporter(Kind kind, Consumer<Progress> listener) {
+        this(kind, DEFAULT_CHUNK_SIZE, listener);
+    }
+
+    /**
+     * Imports the file. Files ending in .csv are read as CSV with a header row, .json, .jsonl and .ndjson
+     * as JSON. Field names are matched case-insensitively: full_name (or name) for authors and members;
+     * title, author (or author_id), genre and year for books.
+     */
+    public Result run(Path file) throws IOException, SQLException {
+        startedAt = System.nanoTime();
+        totalBytes = Files.size(file);
+
+        if (kind != Kind.MEMBERS) {
+            loadAuthorIds();
+        }
+
+        String abortReason = null;
+
+        try (var records = open(file)) {
+            var chunk = new ArrayList<PendingRow>(chunkSize);
+
+            while (true) {
+                Map<String, String> record;
+                try {
+                    record = records.next();
+                } catch (IOException e) {
+                    // The reader can't find the next record after a malformed one, keep what was read so far
+                    abortReason = e.getMessage();
+                    break;
+                }
+
+                if (record == null) {
+                    break;
+                }
+                rowsRead++;
+
+                try {
+                    var row = validate(records.getLine(), record);
+                    if (row != null) {
+                        chunk.add(row);
+                    }
+                } catch (IllegalArgumentException e) {
+                    fail(records.getLine(), e.getMessage());
+                }
+
+                if (chunk.size() >= chunkSize) {
+                    write(chunk);
+                    chunk.clear();
+                }
+
+                reportProgress(false);
+            }
+
+            write(chunk);
+        } finally {
+            // The name indexes were built before the import, let them reload on the next lookup
+            if (kind == Kind.MEMBERS) {
+                Member.getNameIndex().invalidate();
+            } else if (kind == Kind.AUTHORS || authorsCreated > 0) {
+                Author.getNameIndex().invalidate();
+            }
+        }
+
+        var progress = reportProgress(true);
+        return new Result(progress, Collections.unmodifiableList(errors), authorsCreated, abortReason);
+    }
+
+    private RecordReader open(Path file) throws IOException {
+        input = new CountingInputStream(Files.newInputStream(file));
+        var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+        try {
+            return open(reader, file.getFileName().toString());
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    // Picks the reader for the file name's extension
+    static RecordReader open(BufferedReader reader, String fileName) throws IOException {
+        // Skip the byte order mark spreadsheet programs put in front of UTF-8 files
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+
+        var name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return new CsvRecordReader(reader);
+        }
+        if (name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return new JsonRecordReader(reader);
+        }
+
+        throw new IOException("Unsupported file type, expected .csv, .json, .jsonl or .ndjson: " + fileName);
+    }
+
+    private void loadAuthorIds() throws SQLException {
+        try (var conn = Database.getInstance().reader()) {
+            var stmt = conn.prepare("SELECT id, full_name FROM authors");
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    authorIds.putIfAbsent(authorKey(rs.getString(2)), rs.getInt(1));
+                    knownAuthorIds.add(rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    // Returns the row to insert, null for rows that are skipped; throws for invalid rows
+    private PendingRow validate(long line, Map<String, String> record) {
+        return switch (kind) {
+            case AUTHORS -> {
+                var name = required(record, "full_name", "name");
+                var key = authorKey(name);
+
+                // Repeats within the file are only skipped once the first one is written, see write
+                if (authorIds.containsKey(key)) {
+                    skipped++;
+                    yield null;
+                }
+
+                yield new PendingRow(line, name, null, null, 0, null);
+            }
+            case MEMBERS -> new PendingRow(line, required(record, "full_name", "name"), null, null, 0, null);
+            case BOOKS -> {
+                var title = required(record, "title");
+                var genre = required(record, "genre");
+                var year = parseInt(required(record, "year"), "year");
+
+                var authorId = optional(record, "author_id");
+                if (authorId != null) {
+                    var id = parseInt(authorId, "author_id");
+                    if (!knownAuthorIds.contains(id)) {
+                        throw new IllegalArgumentException("Unknown author_id: " + id);
+                    }
+
+                    yield new PendingRow(line, null, title, genre, year, id);
+                }
+
+                yield new PendingRow(line, required(record, "author", "author_name"), title, genre, year, null);
+            }
+        };
+    }
+
+    private void write(List<PendingRow> chunk) throws SQLException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        var createdAuthors = new ArrayList<String>();
+        // Authors named more than once in the chunk are inserted once
+        var namesInChunk = new HashSet<String>();
+
+        try (var conn = Database.getInstance().writer()) {
+            try {
+                var inserted = conn.inTransaction(() -> {
+                    var stmt = conn.prepare(kind.insert);
+                    stmt.clearBatch();
+                    var rows = 0;
+
+                    for (var row : chunk) {
+                        if (kind == Kind.AUTHORS && !namesInChunk.add(authorKey(row.name()))) {
+                            continue;
+                        }
+
+                        bind(conn, stmt, row, createdAuthors);
+                        stmt.addBatch();
+                        rows++;
+                    }
+
+                    stmt.executeBatch();
+                    return rows;
+                });
+
+                imported += inserted;
+                skipped += chunk.size() - inserted;
+                authorsCreated += createdAuthors.size();
+                namesInChunk.forEach(key -> authorIds.put(key, -1));
+            } catch (SQLException e) {
+                // The chunk was rolled back, including authors created for it
+                createdAuthors.forEach(key -> knownAuthorIds.remove(authorIds.remove(key)));
+                createdAuthors.clear();
+                writeRowByRow(conn, chunk, createdAuthors);
+            }
+        }
+    }
+
+    private void writeRowByRow(PooledConnection conn, List<PendingRow> chunk, List<String> createdAuthors) throws SQLException {
+        conn.inTransaction(() -> {
+            var stmt = conn.prepare(kind.insert);
+            stmt.clearBatch();
+
+            for (var row : chunk) {
+                // A name only counts as imported once a row with it was written, a failed one doesn't
+                if (kind == Kind.AUTHORS && authorIds.containsKey(authorKey(row.name()))) {
+                    skipped++;
+                    continue;
+                }
+
+                try {
+                    bind(conn, stmt, row, createdAuthors);
+                    stmt.executeUpdate();
+                    imported++;
+
+                    if (kind == Kind.AUTHORS) {
+                        authorIds.put(authorKey(row.name()), -1);
+                    }
+                } catch (SQLException e) {
+                    fail(row.line(), e.getMessage());
+                }
+            }
+
+            return null;
+        });
+
+        authorsCreated += createdAuthors.size();
+    }
+
+    private void bind(PooledConnection conn, PreparedStatement stmt, PendingRow row, List<String> createdAuthors) throws SQLException {
+        if (kind != Kind.BOOKS) {
+            stmt.setString(1, row.name());
+            return;
+        }
+
+        var authorId = row.authorId() != null ? row.authorId() : resolveAuthor(conn, row.name(), createdAuthors);
+        stmt.setString(1, row.title());
+        stmt.setInt(2, authorId);
+        stmt.setString(3, row.genre());
+        stmt.setInt(4, row.year());
+    }
+
+    private int resolveAuthor(PooledConnection conn, String name, List<String> createdAuthors) throws SQLException {
+        var key = authorKey(name);
+        var id = authorIds.get(key);
+        if (id != null && id >= 0) {
+            return id;
+        }
+
+        var stmt = conn.prepare("INSERT INTO authors (full_name) VALUES (?)");
+        stmt.setString(1, name.strip());
+        stmt.executeUpdate();
+
+        try (var keys = stmt.getGeneratedKeys()) {
+            if (!keys.next()) {
+                throw new SQLException("No id was generated for author " + name);
+            }
+
+            id = keys.getInt(1);
+        }
+
+        authorIds.put(key, id);
+        knownAuthorIds.add(id);
+        createdAuthors.add(key);
+        return id;
+    }
+
+    private void fail(long line, String message) {
+        failed++;
+
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    private Progress reportProgress(boolean force) {
+        var now = System.nanoTime();
+        if (!force && now - lastReportAt < PROGRESS_INTERVAL_NANOS) {
+            return null;
+        }
+
+        lastReportAt = now;
+        var progress = new Progress(rowsRead, imported, skipped, failed, input.count, totalBytes, now - startedAt);
+
+        if (listener != null) {
+            listener.accept(progress);
+        }
+
+        return progress;
+    }
+
+    private static String required(Map<String, String> record, String... names) {
+        var value = optional(record, names);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + names[0]);
+        }
+
+        return value;
+    }
+
+    private static String optional(Map<String, String> record, String... names) {
+        for (var name : names) {
+            var value = record.get(name);
+            if (value != null && !value.isBlank()) {
+                return value.strip();
+            }
+        }
+
+        return null;
+    }
+
+    private static int parseInt(String value, String field) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private static String authorKey(String name) {
+        return name == null ? "" : name.strip().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            var n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
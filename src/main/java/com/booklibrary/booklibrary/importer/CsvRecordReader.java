@@ -0,0 +1,130 @@
+package com.booklibrary.booklibrary.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads RFC 4180 CSV: comma separated, fields optionally quoted with doubled quotes as escapes and line
+ * breaks allowed inside quotes. The first record is the header naming the fields.
+ */
+final class CsvRecordReader implements RecordReader {
+    private final Reader reader;
+    private final List<String> header;
+    private final StringBuilder field = new StringBuilder();
+    private long line = 1;
+    private long recordLine;
+    private int pushedBack = -1;
+
+    CsvRecordReader(Reader reader) throws IOException {
+        this.reader = reader;
+
+        var names = readFields();
+        if (names == null) {
+            throw new IOException("The file is empty, a header row is required");
+        }
+
+        header = names.stream().map(name -> name.strip().toLowerCase(Locale.ROOT)).toList();
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        List<String> fields;
+        do {
+            fields = readFields();
+            if (fields == null) {
+                return null;
+            }
+        } while (fields.size() == 1 && fields.get(0).isEmpty());
+
+        var record = new HashMap<String, String>();
+        for (int i = 0; i < header.size() && i < fields.size(); i++) {
+            record.put(header.get(i), fields.get(i));
+        }
+
+        return record;
+    }
+
+    @Override
+    public long getLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Reads the fields of one record, or returns null at the end of the input
+    private List<String> readFields() throws IOException {
+        var c = read();
+        if (c == -1) {
+            return null;
+        }
+
+        recordLine = line;
+        var fields = new ArrayList<String>();
+        var quoted = false;
+        field.setLength(0);
+
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field starting on line " + recordLine);
+                }
+
+                if (c == '"') {
+                    var next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    var next = read();
+                    if (next != '\n') {
+                        pushedBack = next;
+                    }
+                }
+
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pushedBack != -1) {
+            c = pushedBack;
+            pushedBack = -1;
+        } else {
+            c = reader.read();
+        }
+
+        if (c == '\n') {
+            line++;
+        }
+
+        return c;
+    }
+}
@@ -0,0 +1,196 @@
+package com.booklibrary.booklibrary.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads flat JSON objects one at a time, either from a top-level array or as JSON Lines (one object per
+ * line). Values must be strings, numbers, booleans or null; they are returned as strings.
+ */
+final class JsonRecordReader implements RecordReader {
+    private final Reader reader;
+    private final StringBuilder text = new StringBuilder();
+    private long line = 1;
+    private long recordLine;
+    private int peeked = -2;
+    private boolean started;
+
+    JsonRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public Map<String, String> next() throws IOException {
+        var c = skipWhitespace();
+
+        if (!started) {
+            started = true;
+            if (c == '[') {
+                read();
+                c = skipWhitespace();
+            }
+        }
+
+        // Separators between objects of an array, and its closing bracket
+        while (c == ',' || c == ']') {
+            read();
+            c = skipWhitespace();
+        }
+
+        if (c == -1) {
+            return null;
+        }
+
+        if (c != '{') {
+            throw error("Expected an object");
+        }
+
+        recordLine = line;
+        read();
+        return readObject();
+    }
+
+    @Override
+    public long getLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private Map<String, String> readObject() throws IOException {
+        var record = new HashMap<String, String>();
+
+        if (skipWhitespace() == '}') {
+            read();
+            return record;
+        }
+
+        while (true) {
+            if (skipWhitespace() != '"') {
+                throw error("Expected a field name");
+            }
+            read();
+            var name = readString().toLowerCase(Locale.ROOT);
+
+            if (skipWhitespace() != ':') {
+                throw error("Expected ':'");
+            }
+            read();
+
+            record.put(name, readValue());
+
+            var c = skipWhitespace();
+            read();
+            if (c == '}') {
+                return record;
+            }
+            if (c != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private String readValue() throws IOException {
+        var c = skipWhitespace();
+
+        if (c == '"') {
+            read();
+            return readString();
+        }
+
+        if (c == '{' || c == '[') {
+            throw error("Nested objects and arrays are not supported");
+        }
+
+        text.setLength(0);
+        while (c != -1 && c != ',' && c != '}' && !Character.isWhitespace(c)) {
+            text.append((char) read());
+            c = peek();
+        }
+
+        var literal = text.toString();
+        if (literal.isEmpty()) {
+            throw error("Expected a value");
+        }
+
+        return literal.equals("null") ? null : literal;
+    }
+
+    private String readString() throws IOException {
+        text.setLength(0);
+
+        while (true) {
+            var c = read();
+
+            if (c == -1) {
+                throw error("Unterminated string");
+            }
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+
+            var escaped = read();
+            switch (escaped) {
+                case 'b' -> text.append('\b');
+                case 'f' -> text.append('\f');
+                case 'n' -> text.append('\n');
+                case 'r' -> text.append('\r');
+                case 't' -> text.append('\t');
+                case 'u' -> {
+                    var code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        var digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw error("Invalid unicode escape");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    text.append((char) code);
+                }
+                case -1 -> throw error("Unterminated string");
+                default -> text.append((char) escaped);
+            }
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        var c = peek();
+        while (c != -1 && Character.isWhitespace(c)) {
+            read();
+            c = peek();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = reader.read();
+        }
+        return peeked;
+    }
+
+    private int read() throws IOException {
+        var c = peek();
+        peeked = -2;
+
+        if (c == '\n') {
+            line++;
+        }
+
+        return c;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " on line " + line);
+    }
+}
@@ -0,0 +1,16 @@
+package com.booklibrary.booklibrary.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+// Streams the records of an import file one at a time, keyed by lower-case field name
+interface RecordReader extends Closeable {
+    /**
+     * Returns the next record, or null at the end of the input.
+     */
+    Map<String, String> next() throws IOException;
+
+    // Line of the input the last returned record started on
+    long getLine();
+}
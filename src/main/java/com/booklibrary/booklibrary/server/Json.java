@@ -0,0 +1,68 @@
+package com.booklibrary.booklibrary.server;
+
+import com.booklibrary.booklibrary.utils.JsonStrings;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes maps, collections, strings, numbers, booleans and nulls as JSON. Anything else is written as its
+ * string form.
+ */
+final class Json {
+    private Json() {
+    }
+
+    static String write(Object value) {
+        var out = new StringBuilder(256);
+        append(out, value);
+        return out.toString();
+    }
+
+    private static void append(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Double number && !Double.isFinite(number)) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            out.append('{');
+            var first = true;
+            for (var entry : map.entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                appendString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                append(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof Collection<?> items) {
+            out.append('[');
+            var first = true;
+            for (var item : items) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                append(out, item);
+            }
+            out.append(']');
+        } else {
+            appendString(out, value.toString());
+        }
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        try {
+            JsonStrings.append(out, value);
+        } catch (IOException e) {
+            // A StringBuilder doesn't throw
+            throw new UncheckedIOException(e);
+        }
+    }
+}
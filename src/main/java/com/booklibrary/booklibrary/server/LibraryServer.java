@@ -0,0 +1,497 @@
+package com.booklibrary.booklibrary.server;
+
+import com.booklibrary.booklibrary.database.ChangeLog;
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.PooledConnection;
+import com.booklibrary.booklibrary.datatypes.Author;
+import com.booklibrary.booklibrary.datatypes.Book;
+import com.booklibrary.booklibrary.datatypes.BookRatingStats;
+import com.booklibrary.booklibrary.datatypes.BookReview;
+import com.booklibrary.booklibrary.datatypes.Member;
+import com.booklibrary.booklibrary.datatypes.ReservationRecord;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the library as JSON over HTTP, for other desks and self-service kiosks, without starting the UI.
+ * Requests are answered with the same {@code datatypes} queries the UI runs.
+ * <ul>
+ *     <li>{@code GET /books?sort=id|title|genre|year&order=asc|desc}, or {@code GET /books?q=text} to search</li>
+ *     <li>{@code GET /books/{id}}, {@code /books/{id}/reviews} and {@code /books/{id}/reservations}</li>
+ *     <li>{@code POST /books/{id}/reservation?member_id=} reserves a book, {@code DELETE} returns it</li>
+ *     <li>{@code GET /authors}, {@code /authors/{id}}, {@code /members}, {@code /members/{id}}</li>
+ *     <li>{@code GET /reservations} lists the books that are out</li>
+ * </ul>
+ * Lists take a {@code limit} and return {@code {"items": [...], "next": cursor}}; pass the cursor as
+ * {@code after} to get the next page, it is null on the last one. Reads carry an ETag built from the
+ * latest change log sequence, which moves with every write, so a conditional GET whose
+ * {@code If-None-Match} still matches is answered with 304 without running the query. A query that fails
+ * is answered with 500 and no ETag, so neither an error nor an empty result is cached as the data.
+ */
+public final class LibraryServer {
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 500;
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // Distinguishes the ETags of this run from those of a previous one on a database that was replaced
+    private final String instance = Long.toString(System.currentTimeMillis(), 36);
+
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private record Response(int status, Object body) {
+    }
+
+    public LibraryServer(InetSocketAddress address, int threads) throws IOException {
+        // Small responses would otherwise wait for the delayed ACK of the previous one on kept-alive connections
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        var threadNumbers = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, "http-" + threadNumbers.incrementAndGet()));
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var method = exchange.getRequestMethod();
+            var path = exchange.getRequestURI().getPath().split("/");
+            var params = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (method.equals("POST")) {
+                params.putAll(parseQuery(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+            }
+
+            try {
+                if (!method.equals("GET") && !method.equals("HEAD")) {
+                    send(exchange, update(method, path, params), null);
+                    ChangeLog.pruneIfDue();
+                    return;
+                }
+
+                // Taken before the query runs, so a write in between makes the tag older than the data, never newer
+                var etag = "\"" + instance + "-" + ChangeLog.latestSequence() + "\"";
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+
+                Response response;
+                try (var conn = Database.getInstance().reader()) {
+                    response = read(conn, path, params);
+                }
+                send(exchange, response, etag);
+            } catch (HttpError e) {
+                send(exchange, new Response(e.status, Map.of("error", e.getMessage())), null);
+            } catch (SQLException | RuntimeException e) {
+                e.printStackTrace();
+                send(exchange, new Response(500, Map.of("error", "Internal error")), null);
+            }
+        }
+    }
+
+    private Response read(PooledConnection conn, String[] path, Map<String, String> params) throws SQLException {
+        var resource = path.length > 1 ? path[1] : "";
+
+        return switch (resource) {
+            case "books" -> {
+                if (path.length == 2) {
+                    yield ok(params.containsKey("q") ? searchBooks(conn, params) : listBooks(conn, params));
+                }
+
+                var id = id(path[2]);
+                if (path.length == 3) {
+                    yield ok(book(conn, id));
+                }
+                if (path.length == 4 && path[3].equals("reviews")) {
+                    yield ok(reviews(conn, id, params));
+                }
+                if (path.length == 4 && path[3].equals("reservations")) {
+                    yield ok(reservationHistory(conn, id, params));
+                }
+                throw notFound();
+            }
+            case "authors" -> {
+                if (path.length == 2) {
+                    var limit = limit(params);
+                    var authors = Author.getPage(conn, intParam(params, "after", 0), limit);
+                    yield ok(page(authors.stream().map(LibraryServer::author).toList(), limit,
+                            () -> String.valueOf(authors.get(authors.size() - 1).getIdProperty().get())));
+                }
+                if (path.length == 3) {
+                    yield ok(authorDetails(conn, id(path[2])));
+                }
+                throw notFound();
+            }
+            case "members" -> {
+                if (path.length == 2) {
+                    var limit = limit(params);
+                    var members = Member.getPage(conn, intParam(params, "after", 0), limit);
+                    yield ok(page(members.stream().map(LibraryServer::member).toList(), limit,
+                            () -> String.valueOf(members.get(members.size() - 1).getIdProperty().get())));
+                }
+                if (path.length == 3) {
+                    yield ok(memberDetails(conn, id(path[2])));
+                }
+                throw notFound();
+            }
+            case "reservations" -> {
+                if (path.length == 2) {
+                    var limit = limit(params);
+                    var records = ReservationRecord.getActivePage(conn, intParam(params, "after", 0), limit);
+                    yield ok(page(records.stream().map(record -> reservation(record, false)).toList(), limit,
+                            () -> String.valueOf(records.get(records.size() - 1).getBookIdProperty().get())));
+                }
+                throw notFound();
+            }
+            default -> throw notFound();
+        };
+    }
+
+    private Response update(String method, String[] path, Map<String, String> params) throws SQLException {
+        if (path.length != 4 || !path[1].equals("books") || !path[3].equals("reservation")) {
+            throw new HttpError(405, "Method not allowed");
+        }
+
+        var bookId = id(path[2]);
+        var memberId = method.equals("POST") ? intParam(params, "member_id", -1) : -1;
+
+        // Checked on a reader that is closed again before the write takes the writer
+        try (var conn = Database.getInstance().reader()) {
+            if (Book.findById(conn, bookId) == null) {
+                throw new HttpError(404, "No book with id " + bookId);
+            }
+            if (method.equals("POST") && (memberId < 0 || Member.findById(conn, memberId) == null)) {
+                throw new HttpError(400, "member_id must be the id of a member");
+            }
+        }
+
+        switch (method) {
+            case "POST" -> {
+                return switch (ReservationRecord.reserve(bookId, memberId)) {
+                    case SUCCESS -> new Response(201, Map.of("book_id", bookId, "member_id", memberId, "status", "reserved"));
+                    case CONFLICT -> throw new HttpError(409, "The book is already reserved");
+                    case FAILED -> throw new HttpError(500, "The book could not be reserved");
+                };
+            }
+            case "DELETE" -> {
+                return switch (ReservationRecord.returnBook(bookId)) {
+                    case SUCCESS -> new Response(200, Map.of("book_id", bookId, "status", "returned"));
+                    case CONFLICT -> throw new HttpError(409, "The book is not reserved");
+                    case FAILED -> throw new HttpError(500, "The book could not be returned");
+                };
+            }
+            default -> throw new HttpError(405, "Method not allowed");
+        }
+    }
+
+    private static Map<String, Object> listBooks(PooledConnection conn, Map<String, String> params) throws SQLException {
+        Book.SortKey sortKey;
+        try {
+            sortKey = Book.SortKey.valueOf(params.getOrDefault("sort", "id").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, "sort must be one of id, title, genre, year");
+        }
+
+        var ascending = !params.getOrDefault("order", "asc").equalsIgnoreCase("desc");
+        var limit = limit(params);
+        var after = params.containsKey("after") ? decodeCursor(sortKey, params.get("after")) : null;
+
+        var books = Book.getBookListingsPage(conn, sortKey, ascending, after, limit);
+        return page(books.stream().map(LibraryServer::book).toList(), limit,
+                () -> encodeCursor(books.get(books.size() - 1).getCursor(sortKey)));
+    }
+
+    private static Map<String, Object> searchBooks(PooledConnection conn, Map<String, String> params) throws SQLException {
+        var limit = limit(params);
+        var offset = intParam(params, "after", 0);
+
+        var books = Book.search(conn, params.get("q"), limit, offset);
+        return page(books.stream().map(LibraryServer::book).toList(), limit, () -> String.valueOf(offset + books.size()));
+    }
+
+    private static Map<String, Object> book(PooledConnection conn, int id) throws SQLException {
+        var books = Book.getBookListingsByIds(conn, List.of(id));
+        if (books.isEmpty()) {
+            throw new HttpError(404, "No book with id " + id);
+        }
+
+        var book = book(books.get(0));
+        book.put("ratings", ratings(BookRatingStats.forBook(conn, id)));
+        return book;
+    }
+
+    private static Map<String, Object> reviews(PooledConnection conn, int bookId, Map<String, String> params) throws SQLException {
+        var limit = limit(params);
+        var after = params.containsKey("after") ? intParam(params, "after", 0) : null;
+
+        var reviews = BookReview.getPageForBookAfterId(conn, bookId, after, limit);
+        return page(reviews.stream().map(review -> review(bookId, review)).toList(), limit,
+                () -> String.valueOf(reviews.get(reviews.size() - 1).getIdProperty().get()));
+    }
+
+    private static Map<String, Object> reservationHistory(PooledConnection conn, int bookId, Map<String, String> params) throws SQLException {
+        var limit = limit(params);
+        Timestamp reservedAt = null;
+        var afterId = 0;
+
+        if (params.containsKey("after")) {
+            // reservation time in epoch milliseconds and record id
+            var parts = params.get("after").split("_");
+            try {
+                reservedAt = new Timestamp(Long.parseLong(parts[0]));
+                afterId = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new HttpError(400, "Invalid after cursor");
+            }
+        }
+
+        var records = ReservationRecord.getHistoryPageAfter(conn, bookId, reservedAt, afterId, limit);
+        return page(records.stream().map(record -> reservation(record, true)).toList(), limit, () -> {
+            var last = records.get(records.size() - 1);
+            return last.getReservedAtProperty().get().getTime() + "_" + last.getIdProperty().get();
+        });
+    }
+
+    private static Map<String, Object> authorDetails(PooledConnection conn, int id) throws SQLException {
+        var authors = Author.getAuthorsWithStatistics(conn, List.of(id));
+        if (authors.isEmpty()) {
+            throw new HttpError(404, "No author with id " + id);
+        }
+
+        var author = authors.get(0);
+        var json = author(author);
+        json.put("book_count", author.getBookCountProperty().get());
+        json.put("genres", author.getGenres());
+        json.put("average_rating", author.getAverageRatingProperty().get());
+        return json;
+    }
+
+    private static Map<String, Object> memberDetails(PooledConnection conn, int id) throws SQLException {
+        var members = Member.getByIds(conn, List.of(id));
+        if (members.isEmpty()) {
+            throw new HttpError(404, "No member with id " + id);
+        }
+
+        var member = members.get(0);
+        var json = member(member);
+        json.put("review_count", member.getReviewCount());
+        return json;
+    }
+
+    private static Map<String, Object> book(Book book) {
+        var json = new LinkedHashMap<String, Object>();
+        json.put("id", book.getIdProperty().get());
+        json.put("title", book.getTitleProperty().get());
+        json.put("author_id", book.getAuthorIdProperty().get());
+        json.put("author_name", book.getAuthorNameProperty().get());
+        json.put("genre", book.getGenreProperty().get());
+        json.put("year", book.getYearProperty().get());
+        json.put("reserved_by", book.isReserved() ? book.getReservedByProperty().get() : null);
+        json.put("reserved_by_name", book.isReserved() ? book.getReservedByNameProperty().get() : null);
+        json.put("average_rating", book.getAverageRatingProperty().get());
+        return json;
+    }
+
+    private static Map<String, Object> ratings(BookRatingStats stats) {
+        var stars = new ArrayList<Integer>();
+        for (int i = 1; i <= 5; i++) {
+            stars.add(stats.getStarCount(i));
+        }
+
+        var json = new LinkedHashMap<String, Object>();
+        json.put("review_count", stats.getReviewCount());
+        json.put("average", stats.getReviewCount() == 0 ? null : stats.getAverage());
+        json.put("stars", stars);
+        return json;
+    }
+
+    private static Map<String, Object> review(int bookId, BookReview review) {
+        var json = new LinkedHashMap<String, Object>();
+        json.put("id", review.getIdProperty().get());
+        json.put("book_id", bookId);
+        json.put("member_id", review.getMemberIdProperty().get());
+        json.put("member_name", review.getMemberNameProperty().get());
+        json.put("rating", review.getRatingProperty().get());
+        json.put("text", review.getTextProperty().get());
+        return json;
+    }
+
+    private static Map<String, Object> reservation(ReservationRecord record, boolean withMemberName) {
+        var returnedAt = record.getReturnedAtProperty().get();
+
+        var json = new LinkedHashMap<String, Object>();
+        json.put("id", record.getIdProperty().get());
+        json.put("book_id", record.getBookIdProperty().get());
+        json.put("member_id", record.getMemberIdProperty().get());
+        if (withMemberName) {
+            json.put("member_name", record.getMemberNameProperty().get());
+        }
+        json.put("reserved_at", record.getReservedAtProperty().get().toInstant().toString());
+        json.put("returned_at", returnedAt != null ? returnedAt.toInstant().toString() : null);
+        return json;
+    }
+
+    private static Map<String, Object> author(Author author) {
+        var json = new LinkedHashMap<String, Object>();
+        json.put("id", author.getIdProperty().get());
+        json.put("full_name", author.getFullNameProperty().get());
+        return json;
+    }
+
+    private static Map<String, Object> member(Member member) {
+        var json = new LinkedHashMap<String, Object>();
+        json.put("id", member.getIdProperty().get());
+        json.put("full_name", member.getFullNameProperty().get());
+        return json;
+    }
+
+    @FunctionalInterface
+    private interface CursorOfLast {
+        String get();
+    }
+
+    // A full page may have a successor, a short one is the last
+    private static Map<String, Object> page(List<Map<String, Object>> items, int limit, CursorOfLast next) {
+        var json = new LinkedHashMap<String, Object>();
+        json.put("items", items);
+        json.put("next", items.size() < limit || items.isEmpty() ? null : next.get());
+        return json;
+    }
+
+    private static String encodeCursor(Book.Cursor cursor) {
+        var text = cursor.sortValue() + "\n" + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Book.Cursor decodeCursor(Book.SortKey sortKey, String token) {
+        try {
+            var text = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            var split = text.lastIndexOf('\n');
+            var id = Integer.parseInt(text.substring(split + 1));
+            var value = text.substring(0, split);
+
+            return switch (sortKey) {
+                case ID -> new Book.Cursor(id, id);
+                case YEAR -> new Book.Cursor(Integer.parseInt(value), id);
+                case TITLE, GENRE -> new Book.Cursor(value, id);
+            };
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new HttpError(400, "Invalid after cursor");
+        }
+    }
+
+    private static Response ok(Object body) {
+        return new Response(200, body);
+    }
+
+    private static HttpError notFound() {
+        return new HttpError(404, "Not found");
+    }
+
+    private static int id(String segment) {
+        try {
+            return Integer.parseInt(segment);
+        } catch (NumberFormatException e) {
+            throw new HttpError(404, "Not found");
+        }
+    }
+
+    private static int limit(Map<String, String> params) {
+        var limit = intParam(params, "limit", DEFAULT_LIMIT);
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new HttpError(400, "limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int fallback) {
+        var value = params.get(name);
+        if (value == null) {
+            return fallback;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, name + " must be a number");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        var params = new HashMap<String, String>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+
+        for (var pair : query.split("&")) {
+            var split = pair.indexOf('=');
+            var name = split < 0 ? pair : pair.substring(0, split);
+            var value = split < 0 ? "" : pair.substring(split + 1);
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, Response response, String etag) throws IOException {
+        var body = Json.write(response.body()).getBytes(StandardCharsets.UTF_8);
+        var headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", JSON);
+        if (etag != null) {
+            headers.set("ETag", etag);
+            // Clients may keep the response but have to revalidate it before every use
+            headers.set("Cache-Control", "no-cache");
+        }
+
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(response.status(), -1);
+            return;
+        }
+
+        exchange.sendResponseHeaders(response.status(), body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
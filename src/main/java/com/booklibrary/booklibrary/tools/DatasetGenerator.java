@@ -0,0 +1,367 @@
+package com.booklibrary.booklibrary.tools;
+
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.PooledConnection;
+import com.booklibrary.booklibrary.datatypes.BookRatingStats;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Fills an empty database with a synthetic library whose shape resembles real circulation data: a few
+ * authors write most of the books, a few books get most of the reviews and reservations, and every book
+ * has a reservation history spread over several years, the last one possibly still open.
+ * <p>
+ * The output only depends on the scale and the seed. Rows are written in batches, one transaction per
+ * batch, so tens of millions of rows can be generated. Popularity ranks are spread over the id range
+ * with a fixed permutation, so the popular rows aren't all at the start of a table.
+ */
+public final class DatasetGenerator {
+    public static final long DEFAULT_SEED = 42;
+    private static final int BATCH_SIZE = 50_000;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    // Histories end here rather than at the current time, so a seed always gives the same rows (2025-01-01 UTC)
+    private static final long HISTORY_END_MILLIS = 1_735_689_600_000L;
+    private static final DateTimeFormatter SQLITE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    // Skew of the popularity distributions; higher means more concentrated
+    private static final double AUTHOR_SKEW = 1.1;
+    private static final double BOOK_SKEW = 1.0;
+    private static final double MEMBER_SKEW = 0.6;
+    // Share of books whose latest reservation hasn't been returned yet
+    private static final double OPEN_RESERVATION_SHARE = 0.15;
+
+    private static final String[] FIRST_NAMES = {
+            "Milan", "Nenad", "Ana", "Jelena", "Marko", "Ivana", "Stefan", "Milica", "Nikola", "Jovana", "Luka", "Sara",
+            "Petar", "Maja", "Aleksa", "Teodora", "David", "Emma", "James", "Olivia", "Lucas", "Mia", "Noah", "Sofia"};
+    private static final String[] LAST_NAMES = {
+            "Maric", "Markovic", "Jokic", "Petrovic", "Nikolic", "Jovanovic", "Ilic", "Pavlovic", "Stojanovic", "Kovac",
+            "Popovic", "Savic", "Smith", "Johnson", "Brown", "Garcia", "Miller", "Davis", "Wilson", "Moore"};
+    private static final String[] ADJECTIVES = {
+            "Silent", "Last", "Hidden", "Broken", "Golden", "Forgotten", "Burning", "Distant", "Winter", "Secret", "Red", "Lost"};
+    private static final String[] NOUNS = {
+            "River", "Kingdom", "Garden", "City", "Storm", "Letter", "Mountain", "Shadow", "Empire", "House", "Sea", "War"};
+    private static final String[] GENRES = {"Drama", "Action", "Romance", "Thriller", "Fantasy", "History", "Horror", "Poetry", "Science"};
+    // Relative share of each genre above
+    private static final double[] GENRE_WEIGHTS = {22, 15, 14, 13, 11, 9, 7, 4, 5};
+    private static final String[] REVIEW_PHRASES = {
+            "Could not put it down.", "Slow start, but worth it.", "The ending surprised me.", "Not my kind of book.",
+            "Beautifully written.", "Too long for what it says.", "I would read it again.", "Great characters."};
+
+    // Reservations a book can have per year at most, leaving room for the loan periods
+    private static final int MAX_RESERVATIONS_PER_YEAR = 90;
+
+    public record Scale(int books, int authors, int members, double reviewsPerBook, double reservationsPerBook, int historyYears) {
+        // Defaults that keep the proportions of a public library for the given number of books
+        public static Scale ofBooks(int books) {
+            return new Scale(books, Math.max(1, books / 8), Math.max(1, books / 4), 3, 4, 5);
+        }
+
+        public long reviews() {
+            return Math.round(books * reviewsPerBook);
+        }
+    }
+
+    public record Progress(String table, long rows, long total) {
+    }
+
+    public record Result(int authors, int members, int books, long reviews, long reservations, long openReservations, long elapsedNanos) {
+    }
+
+    private final Scale scale;
+    private final long seed;
+    private final Consumer<Progress> listener;
+
+    public DatasetGenerator(Scale scale, long seed, Consumer<Progress> listener) {
+        this.scale = scale;
+        this.seed = seed;
+        this.listener = listener;
+    }
+
+    public Result run() throws SQLException {
+        var start = System.nanoTime();
+        var db = Database.getInstance();
+
+        try (var writer = db.writer()) {
+            ensureEmpty(writer);
+
+            insertAuthors(writer);
+            insertMembers(writer);
+            insertBooks(writer);
+            var reviews = insertReviews(writer);
+            var reservations = insertReservations(writer);
+            var open = markOpenReservations(writer);
+
+            BookRatingStats.rebuild();
+
+            // The planner needs statistics of the new tables to pick the right indexes
+            writer.prepare("ANALYZE").execute();
+
+            return new Result(scale.authors(), scale.members(), scale.books(), reviews, reservations, open, System.nanoTime() - start);
+        }
+    }
+
+    // Rows refer to each other by the ids 1..n they will get, which needs empty tables whose ids were never used
+    private void ensureEmpty(PooledConnection conn) throws SQLException {
+        var stmt = conn.prepare("""
+                SELECT EXISTS (SELECT 1 FROM authors) OR EXISTS (SELECT 1 FROM members) OR EXISTS (SELECT 1 FROM books)
+                    OR EXISTS (SELECT 1 FROM reviews) OR EXISTS (SELECT 1 FROM reservation_records)
+                    OR EXISTS (SELECT 1 FROM sqlite_sequence WHERE seq > 0
+                               AND name IN ('authors', 'members', 'books', 'reviews', 'reservation_records'))""");
+
+        try (var rs = stmt.executeQuery()) {
+            if (rs.next() && rs.getBoolean(1)) {
+                throw new SQLException("The dataset generator needs a new database, ids are assigned from 1 "
+                        + "and this one has, or once had, rows");
+            }
+        }
+    }
+
+    private void insertAuthors(PooledConnection conn) throws SQLException {
+        var random = random(1);
+        insertRows(conn, "authors", "INSERT INTO authors (full_name) VALUES (?)", scale.authors(), (stmt, row) -> stmt.setString(1, personName(random)));
+    }
+
+    private void insertMembers(PooledConnection conn) throws SQLException {
+        var random = random(2);
+        insertRows(conn, "members", "INSERT INTO members (full_name) VALUES (?)", scale.members(), (stmt, row) -> stmt.setString(1, personName(random)));
+    }
+
+    private void insertBooks(PooledConnection conn) throws SQLException {
+        var random = random(3);
+        var authors = new ZipfSampler(scale.authors(), AUTHOR_SKEW);
+        var authorIds = Permutation.of(scale.authors());
+
+        insertRows(conn, "books", "INSERT INTO books (title, author_id, genre, year) VALUES (?, ?, ?, ?)", scale.books(), (stmt, row) -> {
+            stmt.setString(1, title(random));
+            stmt.setLong(2, authorIds.apply(authors.sample(random)));
+            stmt.setString(3, GENRES[pick(random, GENRE_WEIGHTS)]);
+            // Most books are recent, the tail goes back a century
+            stmt.setInt(4, Math.max(1900, 2024 - (int) (-Math.log(1 - random.nextDouble()) * 15)));
+        });
+    }
+
+    private long insertReviews(PooledConnection conn) throws SQLException {
+        var random = random(4);
+        var books = new ZipfSampler(scale.books(), BOOK_SKEW);
+        var members = new ZipfSampler(scale.members(), MEMBER_SKEW);
+        var bookIds = Permutation.of(scale.books());
+        var memberIds = Permutation.of(scale.members());
+        var total = scale.reviews();
+
+        insertRows(conn, "reviews", "INSERT INTO reviews (member_id, book_id, text, rating) VALUES (?, ?, ?, ?)", total, (stmt, row) -> {
+            var bookId = bookIds.apply(books.sample(random));
+            stmt.setLong(1, memberIds.apply(members.sample(random)));
+            stmt.setLong(2, bookId);
+            stmt.setString(3, REVIEW_PHRASES[random.nextInt(REVIEW_PHRASES.length)]);
+            stmt.setInt(4, rating(random, bookId));
+        });
+
+        return total;
+    }
+
+    /**
+     * Gives every book a number of reservations proportional to its popularity and lays them out one after
+     * another over the history period, so a book is never lent twice at the same time.
+     */
+    private long insertReservations(PooledConnection conn) throws SQLException {
+        var random = random(5);
+        var members = new ZipfSampler(scale.members(), MEMBER_SKEW);
+        var bookIds = Permutation.of(scale.books());
+        var memberIds = Permutation.of(scale.members());
+        var historyMillis = scale.historyYears() * 365 * DAY_MILLIS;
+        var historyStart = HISTORY_END_MILLIS - historyMillis;
+        var maxPerBook = scale.historyYears() * MAX_RESERVATIONS_PER_YEAR;
+        var expectedTotal = scale.books() * scale.reservationsPerBook();
+        var normalisation = harmonic(scale.books(), BOOK_SKEW);
+        var insert = "INSERT INTO reservation_records (member_id, book_id, reserved_at, returned_at) VALUES (?, ?, ?, ?)";
+        var rows = new long[1];
+
+        for (int first = 1; first <= scale.books(); first += BATCH_SIZE / 4) {
+            var from = first;
+            var to = Math.min(scale.books(), first + BATCH_SIZE / 4 - 1);
+
+            conn.inTransaction(() -> {
+                var stmt = conn.prepare(insert);
+
+                for (long rank = from; rank <= to; rank++) {
+                    var expected = expectedTotal * ZipfSampler.weight(rank, BOOK_SKEW) / normalisation;
+                    var count = (int) Math.min(maxPerBook, (long) expected + (random.nextDouble() < expected % 1 ? 1 : 0));
+                    if (count == 0) {
+                        continue;
+                    }
+
+                    var bookId = bookIds.apply(rank);
+                    var slot = historyMillis / count;
+                    var reservedAt = historyStart + random.nextLong(Math.max(1, slot / 2));
+
+                    for (int i = 0; i < count && reservedAt < HISTORY_END_MILLIS; i++) {
+                        stmt.setLong(1, memberIds.apply(members.sample(random)));
+                        stmt.setLong(2, bookId);
+
+                        var last = i == count - 1;
+                        if (last && random.nextDouble() < OPEN_RESERVATION_SHARE) {
+                            var openedAt = HISTORY_END_MILLIS - random.nextLong(Math.max(1, Math.min(slot, 21 * DAY_MILLIS)));
+                            stmt.setTimestamp(3, new Timestamp(Math.max(reservedAt, openedAt)));
+                            stmt.setString(4, null);
+                        } else {
+                            var loan = DAY_MILLIS + random.nextLong(Math.max(1, Math.min(27 * DAY_MILLIS, slot * 8 / 10)));
+                            var returnedAt = Math.min(reservedAt + loan, HISTORY_END_MILLIS - 1000);
+                            stmt.setTimestamp(3, new Timestamp(reservedAt));
+                            stmt.setString(4, SQLITE_TIMESTAMP.format(Instant.ofEpochMilli(returnedAt)));
+                        }
+
+                        stmt.addBatch();
+                        rows[0]++;
+                        reservedAt += (long) (slot * (0.75 + random.nextDouble() / 2));
+                    }
+                }
+
+                stmt.executeBatch();
+                clearChangeLog(conn);
+                return null;
+            });
+
+            report("reservation_records", to, scale.books());
+        }
+
+        return rows[0];
+    }
+
+    // Books whose latest reservation is still open are reserved by that member
+    private long markOpenReservations(PooledConnection conn) throws SQLException {
+        return conn.inTransaction(() -> {
+            var update = conn.prepare("""
+                    UPDATE books SET reserved_by = (
+                        SELECT r.member_id FROM reservation_records r WHERE r.book_id = books.id AND r.returned_at IS NULL
+                    )
+                    WHERE id IN (SELECT book_id FROM reservation_records WHERE returned_at IS NULL)""");
+            var updated = update.executeUpdate();
+
+            clearChangeLog(conn);
+            return (long) updated;
+        });
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement stmt, long row) throws SQLException;
+    }
+
+    private void insertRows(PooledConnection conn, String table, String sql, long total, RowBinder binder) throws SQLException {
+        for (long first = 0; first < total; first += BATCH_SIZE) {
+            var from = first;
+            var to = Math.min(total, first + BATCH_SIZE);
+
+            conn.inTransaction(() -> {
+                var stmt = conn.prepare(sql);
+                for (var row = from; row < to; row++) {
+                    binder.bind(stmt, row);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                clearChangeLog(conn);
+                return null;
+            });
+
+            report(table, to, total);
+        }
+    }
+
+    // Nothing reads the entries of generated rows, and they would otherwise outnumber the data
+    private static void clearChangeLog(PooledConnection conn) throws SQLException {
+        conn.prepare("DELETE FROM change_log").executeUpdate();
+    }
+
+    private void report(String table, long rows, long total) {
+        if (listener != null) {
+            listener.accept(new Progress(table, rows, total));
+        }
+    }
+
+    private SplittableRandom random(int phase) {
+        // Each phase has its own stream, so changing one doesn't shift the rows of the others
+        return new SplittableRandom(mix(seed * 31 + phase));
+    }
+
+    // Spreads popularity ranks 1..n over ids 1..n; a stride coprime with n makes it a permutation
+    record Permutation(long n, long stride) {
+        static Permutation of(long n) {
+            var stride = Math.max(1, 2_654_435_761L % n);
+            while (gcd(stride, n) != 1) {
+                stride++;
+            }
+
+            return new Permutation(n, stride);
+        }
+
+        long apply(long rank) {
+            return (rank - 1) * stride % n + 1;
+        }
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static double harmonic(long n, double exponent) {
+        var sum = 0.0;
+        for (long k = n; k >= 1; k--) {
+            sum += ZipfSampler.weight(k, exponent);
+        }
+        return sum;
+    }
+
+    // Each book has its own average, so ratings differ between books and agree within one
+    private int rating(SplittableRandom random, long bookId) {
+        var average = 2.6 + 2.2 * (mix(seed ^ bookId) >>> 11) / (double) (1L << 53);
+        return (int) Math.max(1, Math.min(5, Math.round(average + random.nextGaussian() * 0.9)));
+    }
+
+    private static int pick(SplittableRandom random, double[] weights) {
+        var total = 0.0;
+        for (var weight : weights) {
+            total += weight;
+        }
+
+        var target = random.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            target -= weights[i];
+            if (target < 0) {
+                return i;
+            }
+        }
+
+        return weights.length - 1;
+    }
+
+    private static String personName(SplittableRandom random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    private static String title(SplittableRandom random) {
+        var adjective = ADJECTIVES[random.nextInt(ADJECTIVES.length)];
+        var noun = NOUNS[random.nextInt(NOUNS.length)];
+
+        return switch (random.nextInt(4)) {
+            case 0 -> "The " + adjective + " " + noun;
+            case 1 -> noun + " of " + NOUNS[random.nextInt(NOUNS.length)];
+            case 2 -> "A " + adjective + " " + noun;
+            default -> adjective + " " + noun;
+        };
+    }
+
+    // SplitMix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,255 @@
+package com.booklibrary.booklibrary.tools;
+
+import com.booklibrary.booklibrary.database.Database;
+import com.booklibrary.booklibrary.database.LatencyHistogram;
+import com.booklibrary.booklibrary.datatypes.Author;
+import com.booklibrary.booklibrary.datatypes.Book;
+import com.booklibrary.booklibrary.datatypes.BookReview;
+import com.booklibrary.booklibrary.datatypes.ReservationRecord;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Replays a mix of the application's reads and writes from several threads against the configured
+ * database and reports throughput and latency percentiles per operation. Books and members are picked
+ * with the same skew as the generated data, so hot rows are hit the way real desks would hit them.
+ * <p>
+ * The write operations change the database: reviews are added and books reserved and returned.
+ */
+public final class LoadDriver {
+    private static final double BOOK_SKEW = 1.0;
+    private static final double MEMBER_SKEW = 0.6;
+    private static final int PAGE_SIZE = 50;
+    // Start points for BOOK_PAGE, spread evenly over the title order
+    private static final int PAGE_CURSORS = 1024;
+    private static final String[] SEARCH_TERMS = {"river", "silent kingdom", "garden", "storm", "the last", "maric", "shadow of"};
+
+    public enum Operation {
+        FIND_BOOK(30),
+        BOOK_PAGE(10),
+        SEARCH(10),
+        REVIEWS_PAGE(20),
+        HISTORY_PAGE(10),
+        AUTHOR_RATING(10),
+        RESERVE_OR_RETURN(7),
+        ADD_REVIEW(3);
+
+        // Relative share of the operation in the mix
+        private final int weight;
+
+        Operation(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    public record OperationStats(Operation operation, long count, long errors, double perSecond,
+                                 long p50Micros, long p95Micros, long p99Micros, long maxMicros) {
+    }
+
+    private final int threads;
+    private final Duration duration;
+    private final long seed;
+
+    public LoadDriver(int threads, Duration duration, long seed) {
+        this.threads = Math.max(1, threads);
+        this.duration = duration;
+        this.seed = seed;
+    }
+
+    public List<OperationStats> run() throws SQLException, InterruptedException {
+        var books = maxId("books");
+        var members = maxId("members");
+        var authors = maxId("authors");
+        if (books == 0 || members == 0 || authors == 0) {
+            throw new SQLException("The load driver needs books, authors and members, generate a dataset first");
+        }
+
+        var cursors = titleCursors(books);
+        var operations = Operation.values();
+        var histograms = new LatencyHistogram[threads][operations.length];
+        var errors = new long[threads][operations.length];
+        var deadline = System.nanoTime() + duration.toNanos();
+        var done = new CountDownLatch(threads);
+        var root = new SplittableRandom(seed);
+
+        for (int t = 0; t < threads; t++) {
+            var thread = t;
+            var random = root.split();
+            for (int o = 0; o < operations.length; o++) {
+                histograms[t][o] = new LatencyHistogram();
+            }
+
+            var worker = new Thread(() -> {
+                try {
+                    var desk = new Desk(random, books, members, authors, cursors);
+
+                    while (System.nanoTime() < deadline) {
+                        var operation = desk.nextOperation();
+                        var start = System.nanoTime();
+
+                        try {
+                            if (!desk.perform(operation)) {
+                                errors[thread][operation.ordinal()]++;
+                            }
+                        } catch (SQLException | RuntimeException e) {
+                            errors[thread][operation.ordinal()]++;
+                        }
+
+                        histograms[thread][operation.ordinal()].record((System.nanoTime() - start) / 1000);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-driver-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        done.await();
+
+        var seconds = duration.toNanos() / 1e9;
+        var stats = new ArrayList<OperationStats>();
+        for (var operation : operations) {
+            var merged = new LatencyHistogram();
+            var failed = 0L;
+            for (int t = 0; t < threads; t++) {
+                merged.add(histograms[t][operation.ordinal()]);
+                failed += errors[t][operation.ordinal()];
+            }
+
+            stats.add(new OperationStats(operation, merged.count(), failed, merged.count() / seconds,
+                    merged.percentile(50), merged.percentile(95), merged.percentile(99), merged.max()));
+        }
+
+        return stats;
+    }
+
+    // Read in one pass over the title index; seeking to random positions with OFFSET would scan that far every time
+    private static List<Book.Cursor> titleCursors(int books) throws SQLException {
+        var step = Math.max(1, books / PAGE_CURSORS);
+        var cursors = new ArrayList<Book.Cursor>();
+
+        try (var conn = Database.getInstance().reader()) {
+            try (var rs = conn.prepare("SELECT title, id FROM books ORDER BY title, id").executeQuery()) {
+                for (int row = 0; rs.next(); row++) {
+                    if (row % step == 0) {
+                        cursors.add(new Book.Cursor(rs.getString(1), rs.getInt(2)));
+                    }
+                }
+            }
+        }
+
+        return cursors;
+    }
+
+    private static int maxId(String table) throws SQLException {
+        try (var conn = Database.getInstance().reader()) {
+            try (var rs = conn.prepare("SELECT COALESCE(MAX(id), 0) FROM " + table).executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // One simulated client with its own random stream
+    private static final class Desk {
+        private final SplittableRandom random;
+        private final ZipfSampler books;
+        private final ZipfSampler members;
+        private final DatasetGenerator.Permutation bookIds;
+        private final DatasetGenerator.Permutation memberIds;
+        private final List<Book.Cursor> pageCursors;
+        private final int authorCount;
+        private final int totalWeight;
+
+        Desk(SplittableRandom random, int bookCount, int memberCount, int authorCount, List<Book.Cursor> pageCursors) {
+            this.random = random;
+            this.books = new ZipfSampler(bookCount, BOOK_SKEW);
+            this.members = new ZipfSampler(memberCount, MEMBER_SKEW);
+            this.bookIds = DatasetGenerator.Permutation.of(bookCount);
+            this.memberIds = DatasetGenerator.Permutation.of(memberCount);
+            this.pageCursors = pageCursors;
+            this.authorCount = authorCount;
+
+            var total = 0;
+            for (var operation : Operation.values()) {
+                total += operation.weight;
+            }
+            this.totalWeight = total;
+        }
+
+        Operation nextOperation() {
+            var target = random.nextInt(totalWeight);
+            for (var operation : Operation.values()) {
+                target -= operation.weight;
+                if (target < 0) {
+                    return operation;
+                }
+            }
+
+            return Operation.FIND_BOOK;
+        }
+
+        /**
+         * Runs the operation and returns whether it succeeded. The data access methods report errors by
+         * returning null, an empty list or FAILED, so results that can't legitimately be empty on a
+         * generated dataset count as failures. Review and history pages can be empty for a book nobody
+         * reviewed or borrowed, so those use the overloads that throw the SQLException instead.
+         */
+        boolean perform(Operation operation) throws SQLException {
+            return switch (operation) {
+                case FIND_BOOK -> Book.findById(book()) != null;
+                case BOOK_PAGE -> {
+                    var cursor = pageCursors.get(random.nextInt(pageCursors.size()));
+                    // The first row after the last cursor may be the last book, the page can't be empty otherwise
+                    yield !Book.getBookListingsPage(Book.SortKey.TITLE, true, cursor, PAGE_SIZE).isEmpty()
+                            || cursor == pageCursors.get(pageCursors.size() - 1);
+                }
+                case SEARCH -> !Book.search(SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)], PAGE_SIZE, 0).isEmpty();
+                case REVIEWS_PAGE -> {
+                    try (var conn = Database.getInstance().reader()) {
+                        BookReview.getPageForBookAfterId(conn, book(), null, PAGE_SIZE);
+                    }
+                    yield true;
+                }
+                case HISTORY_PAGE -> {
+                    try (var conn = Database.getInstance().reader()) {
+                        ReservationRecord.getHistoryPageAfter(conn, book(), null, 0, PAGE_SIZE);
+                    }
+                    yield true;
+                }
+                case AUTHOR_RATING -> {
+                    var author = Author.getById(1 + random.nextInt(authorCount));
+                    if (author != null) {
+                        author.getAverageRating();
+                    }
+                    yield author != null;
+                }
+                case RESERVE_OR_RETURN -> {
+                    // Keeps the share of reserved books stable: a taken book is returned instead
+                    var book = book();
+                    var result = ReservationRecord.reserve(book, member());
+                    if (result == ReservationRecord.Result.CONFLICT) {
+                        result = ReservationRecord.returnBook(book);
+                    }
+                    // Another desk may have returned the book first, only FAILED is an error
+                    yield result != ReservationRecord.Result.FAILED;
+                }
+                case ADD_REVIEW -> BookReview.create(member(), book(), "Load test review", 1 + random.nextInt(5)) != null;
+            };
+        }
+
+        // Popularity ranks map to ids the same way as in the generated data
+        private int book() {
+            return (int) bookIds.apply(books.sample(random));
+        }
+
+        private int member() {
+            return (int) memberIds.apply(members.sample(random));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.booklibrary.booklibrary.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a stall of the JavaFX application thread, begun by {@link FxWatchdog} when
+ * the stall is detected and committed when the thread recovers. The event's start is the detection,
+ * up to one threshold after the stall began, the full length is in {@link #stallMillis}. The event's own
+ * stack trace would be the watchdog's, so it is left out and the stalled thread's stack is recorded as
+ * text instead.
+ */
+@Name("com.booklibrary.FxStall")
+@Label("JavaFX Thread Stall")
+@Category({"BookLibrary", "UI"})
+@Description("The JavaFX application thread did not process events for longer than the stall threshold")
+@StackTrace(false)
+public class FxStallEvent extends Event {
+    @Label("Stall Duration")
+    @Timespan(Timespan.MILLISECONDS)
+    public long stallMillis;
+
+    @Label("Call Site")
+    @Description("Application method the JavaFX thread was in when the stall was detected")
+    public String callSite;
+
+    // Can't be called stackTrace, that name belongs to the implicit field
+    @Label("Thread Stack")
+    public String threadStack;
+}
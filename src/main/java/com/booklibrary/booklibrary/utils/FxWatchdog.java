@@ -0,0 +1,249 @@
+package com.booklibrary.booklibrary.utils;
+
+import com.booklibrary.booklibrary.database.QueryMetrics;
+import javafx.application.Platform;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects stalls of the JavaFX application thread. A heartbeat is posted to the thread's event queue, the
+ * same queue pulses go through, and a stall is reported when it has waited longer than the threshold. The
+ * thread's stack is taken and an {@link FxStallEvent} begun as soon as the stall is noticed; when the
+ * thread recovers the stall is written to a log file and the event committed for the flight recorder, so
+ * the event spans the stall on the recording's timeline.
+ * <p>
+ * Stalls are also counted per call site, the application method the thread was stuck in, so the blocking
+ * calls can be found and moved off the thread. A summary is logged when the watchdog is uninstalled.
+ * <p>
+ * Settings (system properties):
+ * <ul>
+ *     <li>{@code booklibrary.fx.stallMillis}: stall threshold in milliseconds, 0 to turn the watchdog off, default 200</li>
+ *     <li>{@code booklibrary.fx.stallLog}: log file, default {@code logs/fx-stalls.log}</li>
+ * </ul>
+ */
+public final class FxWatchdog {
+    private static final String THRESHOLD_PROPERTY = "booklibrary.fx.stallMillis";
+    private static final String LOG_FILE_PROPERTY = "booklibrary.fx.stallLog";
+    private static final long DEFAULT_THRESHOLD_MILLIS = 200;
+    private static final String DEFAULT_LOG_FILE = "logs/fx-stalls.log";
+    private static final long MIN_CHECK_MILLIS = 10;
+    // A stall that lasts this many thresholds is logged before it ends, in case it never does
+    private static final int HANG_THRESHOLDS = 25;
+    private static final int MAX_STACK_FRAMES = 40;
+    private static final String PACKAGE_PREFIX = "com.booklibrary.booklibrary.";
+    // The UI calls into these packages, a stall is attributed to the UI code making the call
+    private static final List<String> LOWER_PACKAGES = List.of(
+            PACKAGE_PREFIX + "database.", PACKAGE_PREFIX + "datatypes.", PACKAGE_PREFIX + "utils.");
+
+    private static final Logger LOGGER = Logger.getLogger("com.booklibrary.booklibrary.fxstalls");
+
+    private static FxWatchdog instance;
+
+    public record StallStats(String callSite, long count, long totalMillis, long maxMillis) {
+        StallStats add(long millis) {
+            return new StallStats(callSite, count + 1, totalMillis + millis, Math.max(maxMillis, millis));
+        }
+    }
+
+    private final Thread thread;
+    private final Executor events;
+    private final long thresholdNanos;
+    private final long checkMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, StallStats> stats = new ConcurrentHashMap<>();
+
+    // Posting time of the heartbeat that hasn't run yet, 0 when there is none
+    private volatile long beatPostedAt;
+    private volatile long beatProcessedAt;
+    // Only used by the watchdog thread
+    private Stall stall;
+
+    private static final class Stall {
+        private final long since;
+        private final String callSite;
+        private final String stackTrace;
+        private final FxStallEvent event;
+        private boolean reportedAsHang;
+
+        Stall(long since, String callSite, String stackTrace, FxStallEvent event) {
+            this.since = since;
+            this.callSite = callSite;
+            this.stackTrace = stackTrace;
+            this.event = event;
+        }
+    }
+
+    FxWatchdog(Thread thread, Executor events, Duration threshold) {
+        this.thread = thread;
+        this.events = events;
+        this.thresholdNanos = threshold.toNanos();
+        this.checkMillis = Math.max(MIN_CHECK_MILLIS, threshold.toMillis() / 4);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var watchdog = new Thread(runnable, "fx-watchdog");
+            watchdog.setDaemon(true);
+            return watchdog;
+        });
+    }
+
+    /**
+     * Starts watching the JavaFX application thread. Must be called on that thread.
+     */
+    public static synchronized void install() {
+        var thresholdMillis = Long.getLong(THRESHOLD_PROPERTY, DEFAULT_THRESHOLD_MILLIS);
+        if (instance != null || thresholdMillis <= 0 || !Platform.isFxApplicationThread()) {
+            return;
+        }
+
+        QueryMetrics.logToFile(LOGGER, System.getProperty(LOG_FILE_PROPERTY, DEFAULT_LOG_FILE));
+        instance = new FxWatchdog(Thread.currentThread(), Platform::runLater, Duration.ofMillis(thresholdMillis));
+        instance.start();
+    }
+
+    public static synchronized void uninstall() {
+        if (instance == null) {
+            return;
+        }
+
+        instance.stop();
+        if (!instance.stats.isEmpty()) {
+            LOGGER.info("JavaFX thread stalls by call site:\n" + instance.summary());
+        }
+        instance = null;
+    }
+
+    // Stall counts per call site, the most time lost first
+    public static synchronized List<StallStats> getStallStats() {
+        return instance == null ? List.of() : instance.stallStats();
+    }
+
+    void start() {
+        scheduler.scheduleAtFixedRate(() -> {
+            // An exception would cancel the schedule and silently end the watching
+            try {
+                check();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error checking the JavaFX thread", e);
+            }
+        }, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    List<StallStats> stallStats() {
+        return stats.values().stream()
+                .sorted(Comparator.comparingLong(StallStats::totalMillis).reversed())
+                .toList();
+    }
+
+    String summary() {
+        var summary = new StringBuilder(String.format("%6s %10s %8s  %s%n", "stalls", "total ms", "max ms", "call site"));
+        for (var site : stallStats()) {
+            summary.append(String.format("%6d %10d %8d  %s%n", site.count(), site.totalMillis(), site.maxMillis(), site.callSite()));
+        }
+        return summary.toString();
+    }
+
+    private void check() {
+        var now = System.nanoTime();
+        var posted = beatPostedAt;
+
+        if (posted == 0) {
+            if (stall != null) {
+                recover(beatProcessedAt);
+            }
+
+            beatPostedAt = now;
+            events.execute(this::beat);
+            return;
+        }
+
+        if (stall == null && now - posted >= thresholdNanos) {
+            var frames = thread.getStackTrace();
+            var event = new FxStallEvent();
+            event.begin();
+            stall = new Stall(posted, callSite(frames), format(frames), event);
+        } else if (stall != null && !stall.reportedAsHang && now - posted >= HANG_THRESHOLDS * thresholdNanos) {
+            stall.reportedAsHang = true;
+            LOGGER.severe(String.format("JavaFX thread has not responded for %d ms, in %s%n%s",
+                    (now - posted) / 1_000_000, stall.callSite, format(thread.getStackTrace())));
+        }
+    }
+
+    // Runs on the JavaFX thread
+    private void beat() {
+        beatProcessedAt = System.nanoTime();
+        beatPostedAt = 0;
+    }
+
+    private void recover(long recoveredAt) {
+        var millis = (recoveredAt - stall.since) / 1_000_000;
+        stats.compute(stall.callSite, (site, current) -> (current != null ? current : new StallStats(site, 0, 0, 0)).add(millis));
+
+        LOGGER.warning(String.format("JavaFX thread stalled for %d ms in %s%n%s", millis, stall.callSite, stall.stackTrace));
+
+        var event = stall.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.stallMillis = millis;
+            event.callSite = stall.callSite;
+            event.threadStack = stall.stackTrace;
+            event.commit();
+        }
+
+        stall = null;
+    }
+
+    // The first UI method on the stack, with the lower layer method it was waiting on
+    static String callSite(StackTraceElement[] frames) {
+        StackTraceElement lower = null;
+        for (var frame : frames) {
+            if (!frame.getClassName().startsWith(PACKAGE_PREFIX)) {
+                continue;
+            }
+
+            if (LOWER_PACKAGES.stream().noneMatch(frame.getClassName()::startsWith)) {
+                return lower == null ? describe(frame) : describe(frame) + " -> " + method(lower);
+            }
+            // The outermost one, the method the UI called rather than the JDBC plumbing below it
+            lower = frame;
+        }
+
+        if (lower != null) {
+            return method(lower);
+        }
+        return frames.length > 0 ? "JavaFX " + describe(frames[0]) : "unknown";
+    }
+
+    private static String describe(StackTraceElement frame) {
+        return method(frame) + ":" + frame.getLineNumber();
+    }
+
+    // Without the line, which varies with where in the method the stack was taken
+    private static String method(StackTraceElement frame) {
+        var className = frame.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName();
+    }
+
+    private static String format(StackTraceElement[] frames) {
+        var text = new StringBuilder();
+        for (int i = 0; i < Math.min(frames.length, MAX_STACK_FRAMES); i++) {
+            text.append("\tat ").append(frames[i]).append(System.lineSeparator());
+        }
+        if (frames.length > MAX_STACK_FRAMES) {
+            text.append("\t... ").append(frames.length - MAX_STACK_FRAMES).append(" more").append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+}
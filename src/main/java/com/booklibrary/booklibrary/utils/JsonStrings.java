@@ -0,0 +1,40 @@
+package com.booklibrary.booklibrary.utils;
+
+import java.io.IOException;
+
+/**
+ * Writes JSON string literals, shared by the JSON Lines export and the HTTP server.
+ */
+public final class JsonStrings {
+    private JsonStrings() {
+    }
+
+    // Appends the value in quotes, escaping quotes, backslashes and control characters
+    public static void append(Appendable out, String value) throws IOException {
+        out.append('"');
+
+        // Runs of characters that need no escaping are appended in one call
+        var start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+
+            out.append(value, start, i);
+            start = i + 1;
+
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> out.append(String.format("\\u%04x", (int) c));
+            }
+        }
+
+        out.append(value, start, value.length());
+        out.append('"');
+    }
+}
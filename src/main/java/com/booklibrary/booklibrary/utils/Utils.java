@@ -1,11 +1,14 @@
 package com.booklibrary.booklibrary.utils;
 
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.layout.StackPane;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public final class Utils {
     private Utils() {
@@ -20,15 +23,52 @@ public final class Utils {
     }
 
     public static void showError(String message) {
+        if (!Platform.isFxApplicationThread()) {
+            if (!runOnFxThread(() -> showError(message))) {
+                System.err.println("Error: " + message);
+            }
+            return;
+        }
+
         var alert = new Alert(Alert.AlertType.ERROR, message, ButtonType.OK);
         alert.showAndWait();
     }
 
     public static void showSuccess(String message) {
+        if (!Platform.isFxApplicationThread()) {
+            if (!runOnFxThread(() -> showSuccess(message))) {
+                System.out.println(message);
+            }
+            return;
+        }
+
         var alert = new Alert(Alert.AlertType.INFORMATION, message, ButtonType.OK);
         alert.showAndWait();
     }
 
+    // Without a running toolkit, as in the command line tools and the HTTP server, there is no UI to report to
+    private static boolean runOnFxThread(Runnable action) {
+        try {
+            Platform.runLater(action);
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    // Hands the result of background work to the JavaFX application thread
+    public static <T> void onFxThread(CompletableFuture<T> future, Consumer<T> action) {
+        future.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                showError("An error occurred while loading data");
+                error.printStackTrace();
+                return;
+            }
+
+            action.accept(result);
+        }));
+    }
+
     public static StackPane getFxml(String name) {
         var loader = new FXMLLoader(Utils.class.getResource("com.myapp.app/" + name + ".fxml"));
 
@@ -2,10 +2,16 @@ module com.booklibrary.booklibrary {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.sql;
+    requires java.management;
+    requires java.logging;
+    requires jdk.jfr;
+    requires jdk.httpserver;
 
 
     opens com.booklibrary.booklibrary to javafx.fxml;
     exports com.booklibrary.booklibrary;
     exports com.booklibrary.booklibrary.controllers;
     opens com.booklibrary.booklibrary.controllers to javafx.fxml;
+    exports com.booklibrary.booklibrary.database to java.management;
+    exports com.booklibrary.booklibrary.utils to jdk.jfr;
 }
\ No newline at end of file
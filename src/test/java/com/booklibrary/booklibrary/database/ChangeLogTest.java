@@ -0,0 +1,77 @@
+package com.booklibrary.booklibrary.database;
+
+import com.booklibrary.booklibrary.datatypes.Member;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeLogTest {
+    @Test
+    void deltaSinceASequenceHoldsTheChangedRows() throws SQLException {
+        TestDatabase.open();
+        var since = ChangeLog.latestSequence();
+
+        var inserted = Member.create("Delta Inserted");
+        var updated = Member.create("Delta Updated");
+        var deleted = Member.create("Delta Deleted");
+        var after = ChangeLog.latestSequence();
+
+        TestDatabase.execute("UPDATE members SET full_name = 'Delta Renamed' WHERE id = ?", updated);
+        TestDatabase.execute("DELETE FROM members WHERE id = ?", deleted);
+
+        // Both created after the first sequence: the one updated stays an insert, the deleted one never shows up
+        var all = ChangeLog.deltaFor(ChangeLog.changesSince(since), "members");
+        assertEquals(Set.of(inserted, updated), all.inserted());
+        assertEquals(Set.of(), all.updated());
+        assertEquals(Set.of(), all.deleted());
+
+        // Seen from after the inserts, the later changes are an update and a delete
+        var later = ChangeLog.deltaFor(ChangeLog.changesSince(after), "members");
+        assertEquals(Set.of(), later.inserted());
+        assertEquals(Set.of(updated), later.updated());
+        assertEquals(Set.of(deleted), later.deleted());
+    }
+
+    @Test
+    void changesAreReturnedOldestFirstAfterTheSequence() throws SQLException {
+        TestDatabase.open();
+        var since = ChangeLog.latestSequence();
+
+        Member.create("Ordered One");
+        Member.create("Ordered Two");
+
+        var changes = ChangeLog.changesSince(since);
+        assertEquals(2, changes.size());
+        assertTrue(changes.get(0).sequence() > since);
+        assertTrue(changes.get(0).sequence() < changes.get(1).sequence());
+        assertEquals(ChangeLog.latestSequence(), changes.get(1).sequence());
+        assertTrue(ChangeLog.changesSince(ChangeLog.latestSequence()).isEmpty());
+    }
+
+    @Test
+    void pruningOldEntriesIsDetectedByReadersThatWereBehind() throws SQLException {
+        var db = TestDatabase.open();
+        Member.create("Pruned Before");
+        var behind = ChangeLog.latestSequence() - 1;
+        Member.create("Pruned After");
+        var latest = ChangeLog.latestSequence();
+
+        assertFalse(ChangeLog.isPrunedAfter(behind));
+
+        TestDatabase.execute("UPDATE change_log SET changed_at = datetime('now', '-1 day') WHERE seq <= ?", latest);
+        try (var writer = db.writer()) {
+            ChangeLog.prune(writer.getConnection());
+        }
+
+        // The log is empty now, but a reader that missed entries has to reload; one that saw them all doesn't
+        assertTrue(ChangeLog.changesSince(behind).isEmpty());
+        assertTrue(ChangeLog.isPrunedAfter(behind));
+        assertFalse(ChangeLog.isPrunedAfter(latest));
+        assertEquals(latest, ChangeLog.latestSequence());
+    }
+}
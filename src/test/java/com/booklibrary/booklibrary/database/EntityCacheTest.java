@@ -0,0 +1,104 @@
+package com.booklibrary.booklibrary.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntityCacheTest {
+    @Test
+    void returnsTheSameInstanceWhileCached() {
+        var cache = new EntityCache<Integer, Object>(100, 10, TimeUnit.MINUTES);
+        var loads = new AtomicInteger();
+
+        var first = cache.get(1, key -> {
+            loads.incrementAndGet();
+            return new Object();
+        });
+        var second = cache.get(1, key -> new Object());
+
+        assertTrue(first == second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void staysWithinItsMaximumSize() {
+        var cache = new EntityCache<Integer, String>(100, 10, TimeUnit.MINUTES);
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.get(i, String::valueOf);
+        }
+
+        assertTrue(cache.size() <= 100, "size " + cache.size());
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    void keepsAFrequentlyUsedEntryWhenScanned() {
+        var cache = new EntityCache<Integer, String>(100, 10, TimeUnit.MINUTES);
+        for (int i = 0; i < 20; i++) {
+            cache.get(-1, String::valueOf);
+        }
+
+        // A scan of keys used once each must not push out the popular one
+        for (int i = 0; i < 500; i++) {
+            cache.get(i, String::valueOf);
+        }
+
+        var reloaded = new AtomicInteger();
+        cache.get(-1, key -> {
+            reloaded.incrementAndGet();
+            return String.valueOf(key);
+        });
+        assertEquals(0, reloaded.get());
+    }
+
+    @Test
+    void doesNotCacheNull() {
+        var cache = new EntityCache<Integer, String>(100, 10, TimeUnit.MINUTES);
+
+        assertNull(cache.get(1, key -> null));
+        assertEquals("1", cache.get(1, String::valueOf));
+    }
+
+    @Test
+    void expiresEntriesAfterTheWriteTimeout() throws InterruptedException {
+        var cache = new EntityCache<Integer, Object>(100, 1, TimeUnit.MILLISECONDS);
+        var first = cache.get(1, key -> new Object());
+
+        Thread.sleep(5);
+
+        assertTrue(cache.get(1, key -> new Object()) != first);
+    }
+
+    @Test
+    void invalidatedKeyIsGone() {
+        var cache = new EntityCache<Integer, String>(100, 10, TimeUnit.MINUTES);
+        cache.get(1, key -> "old");
+
+        cache.invalidate(1);
+
+        assertNull(cache.getIfPresent(1));
+        assertEquals("new", cache.get(1, key -> "new"));
+    }
+
+    @Test
+    void loadThatOverlapsAnInvalidationIsNotCached() {
+        var cache = new EntityCache<Integer, String>(100, 10, TimeUnit.MINUTES);
+
+        // The row is deleted while the loader still holds what it read before
+        var loaded = cache.get(1, key -> {
+            cache.invalidate(key);
+            return "stale";
+        });
+
+        assertEquals("stale", loaded);
+        assertNull(cache.getIfPresent(1));
+        assertEquals("fresh", cache.get(1, key -> "fresh"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.booklibrary.booklibrary.database;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Points the application at a temporary database file. The database is a singleton, so every test class in
+ * the JVM shares the one file; tests create their own rows and don't rely on the table being empty.
+ */
+public final class TestDatabase {
+    private static boolean configured;
+
+    private TestDatabase() {
+    }
+
+    public static synchronized Database open() {
+        if (!configured) {
+            try {
+                var file = Files.createTempFile("booklibrary-test", ".db");
+                for (var suffix : List.of("", "-wal", "-shm")) {
+                    file.resolveSibling(file.getFileName() + suffix).toFile().deleteOnExit();
+                }
+                Database.configure(file.toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            configured = true;
+        }
+
+        return Database.getInstance();
+    }
+
+    // First column of every row, for queries that return ids or counts
+    public static List<Integer> queryInts(String sql, Object... params) throws SQLException {
+        var values = new ArrayList<Integer>();
+
+        try (var conn = open().reader()) {
+            var stmt = conn.prepare(sql);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    values.add(rs.getInt(1));
+                }
+            }
+        }
+
+        return values;
+    }
+
+    public static void execute(String sql, Object... params) throws SQLException {
+        try (var conn = open().writer()) {
+            var stmt = conn.prepare(sql);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.booklibrary.booklibrary.datatypes;
+
+import com.booklibrary.booklibrary.database.TestDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookListingsPageTest {
+    private static final int PAGE_SIZE = 3;
+
+    private static void createBooksWithTies() {
+        TestDatabase.open();
+        var authorId = Author.create("Paging Author");
+
+        // Runs of equal titles, genres and years, longer than a page, so pages have to split ties
+        for (int i = 0; i < 7; i++) {
+            Book.create("Same Title", authorId, i % 2 == 0 ? "Drama" : "Poetry", 1990 + i % 3);
+        }
+        for (int i = 0; i < 4; i++) {
+            Book.create("Another Title", authorId, "Drama", 1990);
+        }
+        Book.create("Zebra", authorId, "Action", 2020);
+    }
+
+    // Walks every page, each one continuing after the cursor of the previous page's last row
+    private static List<Integer> walk(Book.SortKey sortKey, boolean ascending) {
+        var ids = new ArrayList<Integer>();
+        Book.Cursor after = null;
+
+        while (true) {
+            var page = Book.getBookListingsPage(sortKey, ascending, after, PAGE_SIZE);
+            assertTrue(page.size() <= PAGE_SIZE);
+            page.forEach(book -> ids.add(book.getIdProperty().get()));
+
+            if (page.size() < PAGE_SIZE) {
+                return ids;
+            }
+            after = page.get(page.size() - 1).getCursor(sortKey);
+        }
+    }
+
+    private static List<Integer> expected(String column, boolean ascending) throws SQLException {
+        var direction = ascending ? "ASC" : "DESC";
+        return TestDatabase.queryInts("SELECT id FROM books ORDER BY " + column + " " + direction + ", id " + direction);
+    }
+
+    @Test
+    void pagesFollowTheSortOrderWithTiesBrokenById() throws SQLException {
+        createBooksWithTies();
+
+        for (var ascending : List.of(true, false)) {
+            assertEquals(expected("title", ascending), walk(Book.SortKey.TITLE, ascending));
+            assertEquals(expected("genre", ascending), walk(Book.SortKey.GENRE, ascending));
+            assertEquals(expected("year", ascending), walk(Book.SortKey.YEAR, ascending));
+            assertEquals(expected("id", ascending), walk(Book.SortKey.ID, ascending));
+        }
+    }
+
+    @Test
+    void cursorOfAPositionContinuesWithTheNextRow() throws SQLException {
+        createBooksWithTies();
+        var order = expected("title", true);
+
+        // Every position, including ones inside a run of equal titles
+        for (int position = 0; position < order.size() - 1; position++) {
+            var cursor = Book.getCursorAt(Book.SortKey.TITLE, true, position);
+            var page = Book.getBookListingsPage(Book.SortKey.TITLE, true, cursor, 1);
+            assertEquals((int) order.get(position + 1), page.get(0).getIdProperty().get());
+        }
+    }
+}
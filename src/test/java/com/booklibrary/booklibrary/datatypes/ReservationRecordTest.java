@@ -0,0 +1,103 @@
+package com.booklibrary.booklibrary.datatypes;
+
+import com.booklibrary.booklibrary.database.TestDatabase;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReservationRecordTest {
+    private static int newBook() throws SQLException {
+        TestDatabase.open();
+        var authorId = Author.create("Reservation Author");
+        Book.create("Reserved Title", authorId, "Drama", 2001);
+        return TestDatabase.queryInts("SELECT MAX(id) FROM books").get(0);
+    }
+
+    private static int newMember(String name) {
+        TestDatabase.open();
+        return Member.create(name);
+    }
+
+    @Test
+    void reservesAFreeBookAndRecordsIt() throws SQLException {
+        var bookId = newBook();
+        var memberId = newMember("First Reader");
+
+        assertEquals(ReservationRecord.Result.SUCCESS, ReservationRecord.reserve(bookId, memberId));
+        assertEquals(List.of(memberId), TestDatabase.queryInts("SELECT reserved_by FROM books WHERE id = ?", bookId));
+        assertEquals(memberId, ReservationRecord.findActiveForBook(bookId).getMemberIdProperty().get());
+    }
+
+    @Test
+    void reservingAReservedBookIsAConflict() throws SQLException {
+        var bookId = newBook();
+        var holder = newMember("Holder");
+        var other = newMember("Latecomer");
+
+        assertEquals(ReservationRecord.Result.SUCCESS, ReservationRecord.reserve(bookId, holder));
+        assertEquals(ReservationRecord.Result.CONFLICT, ReservationRecord.reserve(bookId, other));
+
+        // The holder and the single history record are unchanged
+        assertEquals(List.of(holder), TestDatabase.queryInts("SELECT reserved_by FROM books WHERE id = ?", bookId));
+        assertEquals(List.of(1), TestDatabase.queryInts("SELECT COUNT(*) FROM reservation_records WHERE book_id = ?", bookId));
+    }
+
+    @Test
+    void exactlyOneOfTwoRacingReservationsSucceeds() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            var bookId = newBook();
+            var members = List.of(newMember("Racer A"), newMember("Racer B"));
+            var start = new CountDownLatch(1);
+
+            var results = new ArrayList<CompletableFuture<ReservationRecord.Result>>();
+            for (var memberId : members) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return ReservationRecord.reserve(bookId, memberId);
+                }));
+            }
+            start.countDown();
+
+            var outcomes = results.stream().map(CompletableFuture::join).toList();
+            assertEquals(1, outcomes.stream().filter(result -> result == ReservationRecord.Result.SUCCESS).count());
+            assertEquals(1, outcomes.stream().filter(result -> result == ReservationRecord.Result.CONFLICT).count());
+            assertEquals(List.of(1), TestDatabase.queryInts("SELECT COUNT(*) FROM reservation_records WHERE book_id = ?", bookId));
+        }
+    }
+
+    @Test
+    void returningAReservedBookClosesTheRecord() throws SQLException {
+        var bookId = newBook();
+        var memberId = newMember("Returner");
+
+        ReservationRecord.reserve(bookId, memberId);
+        assertEquals(ReservationRecord.Result.SUCCESS, ReservationRecord.returnBook(bookId));
+
+        assertNull(ReservationRecord.findActiveForBook(bookId));
+        assertEquals(List.of(0), TestDatabase.queryInts("SELECT COUNT(*) FROM books WHERE id = ? AND reserved_by IS NOT NULL", bookId));
+        assertEquals(List.of(0), TestDatabase.queryInts("SELECT COUNT(*) FROM reservation_records WHERE book_id = ? AND returned_at IS NULL", bookId));
+    }
+
+    @Test
+    void returningABookThatIsNotReservedIsAConflict() throws SQLException {
+        var bookId = newBook();
+
+        assertEquals(ReservationRecord.Result.CONFLICT, ReservationRecord.returnBook(bookId));
+
+        var memberId = newMember("Double Returner");
+        ReservationRecord.reserve(bookId, memberId);
+        ReservationRecord.returnBook(bookId);
+        assertEquals(ReservationRecord.Result.CONFLICT, ReservationRecord.returnBook(bookId));
+    }
+}
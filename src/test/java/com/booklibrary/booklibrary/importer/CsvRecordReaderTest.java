@@ -0,0 +1,81 @@
+package com.booklibrary.booklibrary.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CsvRecordReaderTest {
+    private static RecordReader reader(String text) throws IOException {
+        return CatalogImporter.open(new BufferedReader(new StringReader(text)), "books.csv");
+    }
+
+    @Test
+    void readsRecordsKeyedByLowerCaseHeader() throws IOException {
+        try (var records = reader("Title,Year\nDune,1965\n")) {
+            assertEquals(Map.of("title", "Dune", "year", "1965"), records.next());
+            assertNull(records.next());
+        }
+    }
+
+    @Test
+    void unquotesFieldsWithSeparatorsQuotesAndLineBreaks() throws IOException {
+        try (var records = reader("title,genre\n\"Hello, World\",\"Say \"\"hi\"\"\"\n\"Two\nlines\",Drama\n")) {
+            assertEquals(Map.of("title", "Hello, World", "genre", "Say \"hi\""), records.next());
+            assertEquals(Map.of("title", "Two\nlines", "genre", "Drama"), records.next());
+            assertNull(records.next());
+        }
+    }
+
+    @Test
+    void acceptsCrlfLineEndingsAndNoFinalLineBreak() throws IOException {
+        try (var records = reader("title,year\r\nDune,1965\r\nEmma,1815")) {
+            assertEquals(Map.of("title", "Dune", "year", "1965"), records.next());
+            assertEquals(Map.of("title", "Emma", "year", "1815"), records.next());
+            assertNull(records.next());
+        }
+    }
+
+    @Test
+    void skipsByteOrderMark() throws IOException {
+        try (var records = reader("\uFEFFtitle\nDune\n")) {
+            assertEquals(Map.of("title", "Dune"), records.next());
+        }
+    }
+
+    @Test
+    void skipsBlankLinesAndLeavesMissingFieldsOut() throws IOException {
+        try (var records = reader("title,year\n\nDune\n")) {
+            assertEquals(Map.of("title", "Dune"), records.next());
+            assertNull(records.next());
+        }
+    }
+
+    @Test
+    void reportsTheLineEachRecordStartsOn() throws IOException {
+        try (var records = reader("title\n\"a\nb\"\nc\n")) {
+            records.next();
+            assertEquals(2, records.getLine());
+            records.next();
+            assertEquals(4, records.getLine());
+        }
+    }
+
+    @Test
+    void rejectsUnterminatedQuotedField() throws IOException {
+        try (var records = reader("title\n\"Dune\n")) {
+            assertThrows(IOException.class, records::next);
+        }
+    }
+
+    @Test
+    void rejectsEmptyFile() {
+        assertThrows(IOException.class, () -> reader(""));
+    }
+}
@@ -0,0 +1,78 @@
+package com.booklibrary.booklibrary.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JsonRecordReaderTest {
+    private static RecordReader reader(String text) throws IOException {
+        return CatalogImporter.open(new BufferedReader(new StringReader(text)), "books.json");
+    }
+
+    @Test
+    void readsObjectsOfAnArray() throws IOException {
+        try (var records = reader("[\n  {\"title\": \"Dune\", \"year\": 1965},\n  {\"title\": \"Emma\", \"year\": 1815}\n]\n")) {
+            assertEquals(Map.of("title", "Dune", "year", "1965"), records.next());
+            assertEquals(Map.of("title", "Emma", "year", "1815"), records.next());
+            assertNull(records.next());
+        }
+    }
+
+    @Test
+    void readsJsonLines() throws IOException {
+        try (var records = CatalogImporter.open(new BufferedReader(new StringReader("{\"Title\":\"Dune\"}\n{\"Title\":\"Emma\"}\n")), "books.jsonl")) {
+            assertEquals(Map.of("title", "Dune"), records.next());
+            assertEquals(Map.of("title", "Emma"), records.next());
+            assertEquals(2, records.getLine());
+            assertNull(records.next());
+        }
+    }
+
+    @Test
+    void decodesEscapesAndLiterals() throws IOException {
+        try (var records = reader("{\"title\": \"Say \\\"hi\\\"\\n\\u00e9\", \"reserved\": true, \"genre\": null}")) {
+            var expected = new HashMap<String, String>();
+            expected.put("title", "Say \"hi\"\n\u00e9");
+            expected.put("reserved", "true");
+            expected.put("genre", null);
+            assertEquals(expected, records.next());
+        }
+    }
+
+    @Test
+    void skipsByteOrderMark() throws IOException {
+        try (var records = reader("\uFEFF[{\"title\": \"Dune\"}]")) {
+            assertEquals(Map.of("title", "Dune"), records.next());
+            assertNull(records.next());
+        }
+    }
+
+    @Test
+    void rejectsNestedValues() throws IOException {
+        try (var records = reader("{\"title\": {\"text\": \"Dune\"}}")) {
+            assertThrows(IOException.class, records::next);
+        }
+    }
+
+    @Test
+    void rejectsUnterminatedString() throws IOException {
+        try (var records = reader("{\"title\": \"Dune}")) {
+            assertThrows(IOException.class, records::next);
+        }
+    }
+
+    @Test
+    void rejectsValuesThatAreNotObjects() throws IOException {
+        try (var records = reader("[\"Dune\"]")) {
+            assertThrows(IOException.class, records::next);
+        }
+    }
+}